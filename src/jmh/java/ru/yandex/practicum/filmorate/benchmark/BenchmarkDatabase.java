@@ -0,0 +1,192 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// наборы данных для бенчмарков: встроенная H2 заданного размера с поднятым поверх неё приложением
+// и заполненные тем же набором in-memory хранилища.
+// Пользователи получают id с 1 по users, фильмы — с 1 по films; пользователь users + 1
+// не ставит лайков и ни с кем не дружит, его используют бенчмарки записи
+final class BenchmarkDatabase {
+    private static final AtomicInteger DATABASE_COUNTER = new AtomicInteger();
+    private static final int BATCH_SIZE = 1000;
+    private static final String INSERT_USER = "insert into users(email, user_login, user_name, birthday) " +
+            "values (?, ?, ?, ?);";
+    private static final String INSERT_FILM = "insert into films(film_name, description, release_date, duration, " +
+            "rating_id) values (?, ?, ?, ?, ?);";
+    private static final String INSERT_FILM_GENRE = "insert into film_genre(film_id, genre_id) values (?, ?);";
+    private static final String INSERT_LIKE = "insert into likes(film_id, user_id) values (?, ?);";
+    private static final String INSERT_FRIENDSHIP = "insert into friendship(user_id, friend_id) values (?, ?);";
+
+    private BenchmarkDatabase() {
+    }
+
+    // заполняет новую in-memory базу и запускает на ней приложение без веб-слоя,
+    // чтобы справочники и индексы, которые строятся при старте, видели уже загруженные данные
+    static ConfigurableApplicationContext start(int films, int users, int likesPerFilm, int friendsPerUser) {
+        String url = "jdbc:h2:mem:filmorate-bench-" + DATABASE_COUNTER.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url, "sa", "password");
+
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+        populator.setSqlScriptEncoding("UTF-8");
+        populator.execute(dataSource);
+        seed(new JdbcTemplate(dataSource), films, users, likesPerFilm, friendsPerUser);
+
+        return new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.datasource.url=" + url,
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .run();
+    }
+
+    static long spareUserId(int users) {
+        return users + 1L;
+    }
+
+    static InMemoryFilmStorage inMemoryFilms(int films, int users, int likesPerFilm) {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        for (int i = 0; i < films; i++) {
+            storage.create(film(i));
+        }
+
+        for (int i = 0; i < films; i++) {
+            long filmId = i + 1L;
+            for (int k = 0; k < likesCount(i, users, likesPerFilm); k++) {
+                storage.addUserLike(filmId, likerId(i, k, users));
+            }
+        }
+        return storage;
+    }
+
+    static InMemoryUserStorage inMemoryUsers(int users, int friendsPerUser) {
+        InMemoryUserStorage storage = new InMemoryUserStorage();
+        for (int i = 0; i <= users; i++) {
+            storage.create(user(i));
+        }
+
+        for (int i = 0; i < users; i++) {
+            for (int k = 0; k < friendsCount(users, friendsPerUser); k++) {
+                storage.addUserInFriends(i + 1L, friendId(i, k, users));
+            }
+        }
+        return storage;
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int films, int users, int likesPerFilm, int friendsPerUser) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i <= users; i++) {
+            User user = user(i);
+            rows.add(new Object[]{user.getEmail(), user.getLogin(), user.getName(), Date.valueOf(user.getBirthday())});
+            rows = flushIfFull(jdbcTemplate, INSERT_USER, rows);
+        }
+        flush(jdbcTemplate, INSERT_USER, rows);
+
+        rows = new ArrayList<>();
+        for (int i = 0; i < films; i++) {
+            Film film = film(i);
+            rows.add(new Object[]{film.getName(), film.getDescription(), Date.valueOf(film.getReleaseDate()),
+                    film.getDuration(), i % 5 + 1});
+            rows = flushIfFull(jdbcTemplate, INSERT_FILM, rows);
+        }
+        flush(jdbcTemplate, INSERT_FILM, rows);
+
+        rows = new ArrayList<>();
+        for (int i = 0; i < films; i++) {
+            rows.add(new Object[]{i + 1L, i % 6 + 1});
+            rows.add(new Object[]{i + 1L, (i + 2) % 6 + 1});
+            rows = flushIfFull(jdbcTemplate, INSERT_FILM_GENRE, rows);
+        }
+        flush(jdbcTemplate, INSERT_FILM_GENRE, rows);
+
+        rows = new ArrayList<>();
+        for (int i = 0; i < films; i++) {
+            for (int k = 0; k < likesCount(i, users, likesPerFilm); k++) {
+                rows.add(new Object[]{i + 1L, likerId(i, k, users)});
+                rows = flushIfFull(jdbcTemplate, INSERT_LIKE, rows);
+            }
+        }
+        flush(jdbcTemplate, INSERT_LIKE, rows);
+
+        rows = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            for (int k = 0; k < friendsCount(users, friendsPerUser); k++) {
+                rows.add(new Object[]{i + 1L, friendId(i, k, users)});
+                rows = flushIfFull(jdbcTemplate, INSERT_FRIENDSHIP, rows);
+            }
+        }
+        flush(jdbcTemplate, INSERT_FRIENDSHIP, rows);
+    }
+
+    private static List<Object[]> flushIfFull(JdbcTemplate jdbcTemplate, String sqlQuery, List<Object[]> rows) {
+        if (rows.size() < BATCH_SIZE) {
+            return rows;
+        }
+        flush(jdbcTemplate, sqlQuery, rows);
+        return new ArrayList<>();
+    }
+
+    private static void flush(JdbcTemplate jdbcTemplate, String sqlQuery, List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sqlQuery, rows);
+        }
+    }
+
+    private static Film film(int i) {
+        return Film.builder()
+                .name("film " + i)
+                .description("description of film " + i)
+                .releaseDate(LocalDate.of(1950 + i % 70, i % 12 + 1, i % 28 + 1))
+                .duration(60 + i % 120)
+                .likes(new HashSet<>())
+                .genres(new ArrayList<>())
+                .build();
+    }
+
+    private static User user(int i) {
+        return User.builder()
+                .email("user" + i + "@mail.ru")
+                .login("login" + i)
+                .name("name " + i)
+                .birthday(LocalDate.of(1970 + i % 40, i % 12 + 1, i % 28 + 1))
+                .friends(new HashSet<>())
+                .build();
+    }
+
+    // число лайков у фильма неравномерно: от 0 до 2 * likesPerFilm, в среднем likesPerFilm
+    private static int likesCount(int film, int users, int likesPerFilm) {
+        return Math.min(users, film % (2 * likesPerFilm + 1));
+    }
+
+    // при k < users id различны, поэтому один пользователь не лайкает фильм дважды
+    private static long likerId(int film, int k, int users) {
+        return (film * 7L + k) % users + 1;
+    }
+
+    private static int friendsCount(int users, int friendsPerUser) {
+        return Math.min(friendsPerUser, users - 1);
+    }
+
+    // друзья пользователя — следующие за ним по кругу пользователи, сам пользователь в их число не входит
+    private static long friendId(int user, int k, int users) {
+        return (user + k + 1L) % users + 1;
+    }
+}
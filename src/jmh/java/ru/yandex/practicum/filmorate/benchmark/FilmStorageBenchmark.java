@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmStorageBenchmark {
+    @Param({"1000", "10000"})
+    int films;
+
+    @Param("1000")
+    int users;
+
+    @Param("20")
+    int likesPerFilm;
+
+    private ConfigurableApplicationContext context;
+    private FilmDbStorage filmDbStorage;
+    private InMemoryFilmStorage inMemoryFilmStorage;
+    private long spareUserId;
+    private long nextFilm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkDatabase.start(films, users, likesPerFilm, 0);
+        filmDbStorage = context.getBean(FilmDbStorage.class);
+        inMemoryFilmStorage = BenchmarkDatabase.inMemoryFilms(films, users, likesPerFilm);
+        spareUserId = BenchmarkDatabase.spareUserId(users);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Collection<Film> dbGetAllFilms() {
+        return filmDbStorage.getAllFilms();
+    }
+
+    @Benchmark
+    public Optional<Film> dbGetFilmById() {
+        return filmDbStorage.getFilmById(nextFilmId());
+    }
+
+    @Benchmark
+    public List<Film> dbFindBestFilm() {
+        return filmDbStorage.findBestFilm(10L, null, null);
+    }
+
+    // лайк ставится и снимается в одной итерации, чтобы набор данных не менялся между замерами
+    @Benchmark
+    public void dbAddAndDeleteUserLike() {
+        long filmId = nextFilmId();
+        filmDbStorage.addUserLike(filmId, spareUserId);
+        filmDbStorage.deleteUserLike(filmId, spareUserId);
+    }
+
+    @Benchmark
+    public Collection<Film> inMemoryGetAllFilms() {
+        return inMemoryFilmStorage.getAllFilms();
+    }
+
+    @Benchmark
+    public List<Film> inMemoryFindBestFilm() {
+        return inMemoryFilmStorage.findBestFilm(10L, null, null);
+    }
+
+    @Benchmark
+    public void inMemoryAddAndDeleteUserLike() {
+        long filmId = nextFilmId();
+        inMemoryFilmStorage.addUserLike(filmId, spareUserId);
+        inMemoryFilmStorage.deleteUserLike(filmId, spareUserId);
+    }
+
+    private long nextFilmId() {
+        nextFilm = (nextFilm + 1) % films;
+        return nextFilm + 1;
+    }
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.LikeDto;
+import ru.yandex.practicum.filmorate.dto.UserDto;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.service.FilmDbService;
+import ru.yandex.practicum.filmorate.service.UserDbService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+    @Param({"1000", "10000"})
+    int films;
+
+    @Param("1000")
+    int users;
+
+    @Param("20")
+    int likesPerFilm;
+
+    @Param("50")
+    int friendsPerUser;
+
+    private ConfigurableApplicationContext context;
+    private FilmDbService filmService;
+    private UserDbService userService;
+    private long spareUserId;
+    private long nextFilm;
+    private long nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkDatabase.start(films, users, likesPerFilm, friendsPerUser);
+        filmService = context.getBean(FilmDbService.class);
+        userService = context.getBean(UserDbService.class);
+        spareUserId = BenchmarkDatabase.spareUserId(users);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public FilmDto filmCreate() {
+        return filmService.create(FilmDto.builder()
+                .name("benchmark film")
+                .description("benchmark description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .likes(new HashSet<>())
+                .genres(new ArrayList<>(List.of(Genre.builder().id(1).build(), Genre.builder().id(2).build())))
+                .mpa(Rating.builder().id(1).build())
+                .build());
+    }
+
+    @Benchmark
+    public List<FilmDto> filmFindBestFilm() {
+        return filmService.findBestFilm(10L, null, null);
+    }
+
+    // лайк ставится и снимается в одной итерации, чтобы набор данных не менялся между замерами
+    @Benchmark
+    public FilmDto filmAddAndDeleteUserLike() {
+        nextFilm = (nextFilm + 1) % films;
+        filmService.addUserLike(nextFilm + 1, spareUserId);
+        return filmService.deleteUserLike(nextFilm + 1, spareUserId);
+    }
+
+    @Benchmark
+    public LikeDto filmAddAndDeleteUserLikeCompact() {
+        nextFilm = (nextFilm + 1) % films;
+        filmService.addUserLikeCompact(nextFilm + 1, spareUserId);
+        return filmService.deleteUserLikeCompact(nextFilm + 1, spareUserId);
+    }
+
+    @Benchmark
+    public List<UserDto> userFindCommonFriends() {
+        nextUser = (nextUser + 1) % users;
+        return userService.findCommonFriends(nextUser + 1, (nextUser + 1) % users + 1);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.UserDbStorage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserStorageBenchmark {
+    @Param({"1000", "10000"})
+    int users;
+
+    @Param("50")
+    int friendsPerUser;
+
+    private ConfigurableApplicationContext context;
+    private UserDbStorage userDbStorage;
+    private InMemoryUserStorage inMemoryUserStorage;
+    private long nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkDatabase.start(0, users, 0, friendsPerUser);
+        userDbStorage = context.getBean(UserDbStorage.class);
+        inMemoryUserStorage = BenchmarkDatabase.inMemoryUsers(users, friendsPerUser);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Collection<User> dbGetAllUsers() {
+        return userDbStorage.getAllUsers();
+    }
+
+    @Benchmark
+    public List<User> dbFindAllUsersInFriends() {
+        return userDbStorage.findAllUsersInFriends(nextUserId());
+    }
+
+    @Benchmark
+    public List<User> dbFindCommonFriends() {
+        long userId = nextUserId();
+        return userDbStorage.findCommonFriends(userId, userId % users + 1);
+    }
+
+    @Benchmark
+    public Collection<User> inMemoryGetAllUsers() {
+        return inMemoryUserStorage.getAllUsers();
+    }
+
+    @Benchmark
+    public List<User> inMemoryFindCommonFriends() {
+        long userId = nextUserId();
+        return inMemoryUserStorage.findCommonFriends(userId, userId % users + 1);
+    }
+
+    // соседние пользователи имеют большую общую часть списка друзей
+    private long nextUserId() {
+        nextUser = (nextUser + 1) % users;
+        return nextUser + 1;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+// сильные ETag из номеров версий. В тег входит метка запуска приложения:
+// версии хранятся в памяти и после перезапуска начинаются заново, поэтому старые теги должны стать недействительными
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ETags {
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    public static String of(String kind, long id, long version) {
+        return "\"" + kind + "-" + EPOCH + "-" + id + "-" + version + "\"";
+    }
+
+    public static String of(String kind, long version) {
+        return "\"" + kind + "-" + EPOCH + "-" + version + "\"";
+    }
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.service.ExportService;
+
+@RestController
+@RequestMapping("/export")
+@RequiredArgsConstructor
+public class ExportController {
+    private final ExportService exportService;
+    private final TableExporter tableExporter;
+
+    //GET /export/{table}?format={ndjson|csv}&gzip={gzip}
+    // полная выгрузка таблицы films, film_genre, likes, users или friendship для аналитики;
+    // строки передаются в ответ потоком по мере чтения из базы
+    @GetMapping("/{table}")
+    public ResponseEntity<StreamingResponseBody> exportTable(@PathVariable String table,
+                                                             @RequestParam(defaultValue = "ndjson") String format,
+                                                             @RequestParam(defaultValue = "false") boolean gzip) {
+        return tableExporter.export(table, exportService.getColumns(table),
+                action -> exportService.streamTable(table, action), format, gzip);
+    }
+}
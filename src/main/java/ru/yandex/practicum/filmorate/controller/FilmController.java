@@ -3,11 +3,18 @@ package ru.yandex.practicum.filmorate.controller;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.ImportReportDto;
+import ru.yandex.practicum.filmorate.dto.LikeDto;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @Slf4j
@@ -16,17 +23,41 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FilmController {
     private final FilmService filmService;
+    private final JsonArrayStreamer jsonArrayStreamer;
+    private final NdjsonImporter ndjsonImporter;
 
+    //GET /films
+    // весь список фильмов передаётся в ответ потоком, по мере чтения из хранилища
     @GetMapping
-    public Collection<FilmDto> findAll() {
-        return filmService.findAllFilms();
+    public ResponseEntity<StreamingResponseBody> findAll() {
+        return jsonArrayStreamer.stream(filmService::streamAllFilms);
+    }
+
+    //GET /films?after={after}&limit={limit}
+    // постраничное получение фильмов с id больше after
+    @GetMapping(params = "limit")
+    public List<FilmDto> findPage(@RequestParam(defaultValue = "0") Long after, @RequestParam Integer limit) {
+        return filmService.findFilmsPage(after, limit);
+    }
+
+    //GET /films?after={after}
+    // after без limit отклоняется с ошибкой 400, а не игнорируется: иначе вернулся бы весь список
+    @GetMapping(params = {"after", "!limit"})
+    public List<FilmDto> findPageWithoutLimit(@RequestParam Long after) {
+        return filmService.findFilmsPage(after, null);
     }
 
     //GET /films/{id}
     // получить фильм по id
+    // ETag строится по номеру версии фильма, поэтому ответ 304 отдаётся без чтения фильма.
+    // Существование фильма проверяется до сравнения тегов: иначе If-None-Match: * дал бы 304 вместо 404
     @GetMapping("/{id}")
-    public FilmDto findFilmById(@PathVariable Long id) {
-        return filmService.findFilmById(id);
+    public ResponseEntity<FilmDto> findFilmById(@PathVariable Long id, WebRequest request) {
+        String eTag = ETags.of("film", id, filmService.getFilmVersion(id));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(filmService.findFilmById(id));
     }
 
     @PostMapping
@@ -34,6 +65,20 @@ public class FilmController {
         return filmService.create(filmDto);
     }
 
+    //POST /films/import
+    // пакетная загрузка фильмов: тело — NDJSON, по фильму на строку, в ответ отчёт с ошибками по номерам строк
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportReportDto importFilms(InputStream body) throws IOException {
+        return ndjsonImporter.importLines(body, FilmDto.class, filmService::importFilms);
+    }
+
+    //POST /films/likes/import
+    // пакетная загрузка лайков: строки вида {"filmId": 1, "userId": 2}
+    @PostMapping(value = "/likes/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportReportDto importLikes(InputStream body) throws IOException {
+        return ndjsonImporter.importLines(body, LikeDto.class, filmService::importLikes);
+    }
+
     @PutMapping
     public FilmDto update(@Valid @RequestBody FilmDto filmDto) {
         return filmService.update(filmDto);
@@ -53,11 +98,43 @@ public class FilmController {
         return filmService.deleteUserLike(id, userId);
     }
 
-    //GET /films/popular?count={count}
+    //PUT /films/{id}/like/{userId}?compact=true
+    // краткий ответ: вместо фильма со всеми лайками только их число
+    @PutMapping(value = "/{id}/like/{userId}", params = "compact=true")
+    public LikeDto addUserLikeCompact(@PathVariable Long id, @PathVariable Long userId) {
+        return filmService.addUserLikeCompact(id, userId);
+    }
+
+    //DELETE /films/{id}/like/{userId}?compact=true
+    @DeleteMapping(value = "/{id}/like/{userId}", params = "compact=true")
+    public LikeDto deleteUserLikeCompact(@PathVariable Long id, @PathVariable Long userId) {
+        return filmService.deleteUserLikeCompact(id, userId);
+    }
+
+    //GET /films/search?query={query}&count={count}
+    // поиск по словам названия и описания, результаты упорядочены по релевантности
+    @GetMapping("/search")
+    public List<FilmDto> searchFilms(@RequestParam String query,
+                                     @RequestParam(defaultValue = "10") Integer count) {
+        return filmService.searchFilms(query, count);
+    }
+
+    //GET /films/{id}/similar?count={count}
+    // фильмы, которые чаще всего лайкали те же пользователи, что и фильм id
+    @GetMapping("/{id}/similar")
+    public List<FilmDto> findSimilarFilms(@PathVariable Long id,
+                                          @RequestParam(defaultValue = "10") Integer count) {
+        return filmService.findSimilarFilms(id, count);
+    }
+
+    //GET /films/popular?count={count}&genreId={genreId}&year={year}
     // возвращает список из первых count фильмов по количеству лайков
     // Если значение параметра count не задано, возращает первые 10
+    // genreId и year необязательны: топ фильмов жанра и/или года выпуска
     @GetMapping("/popular")
-    public List<FilmDto> findBestFilm(@RequestParam(defaultValue = "10") Long count) {
-        return filmService.findBestFilm(count);
+    public List<FilmDto> findBestFilm(@RequestParam(defaultValue = "10") Long count,
+                                      @RequestParam(required = false) Integer genreId,
+                                      @RequestParam(required = false) Integer year) {
+        return filmService.findBestFilm(count, genreId, year);
     }
 }
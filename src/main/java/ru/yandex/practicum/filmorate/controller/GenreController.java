@@ -1,8 +1,9 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.dto.GenreDto;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
@@ -15,16 +16,25 @@ public class GenreController {
     private final GenreService genreService;
 
     //GET /genres
+    // ETag строится по версии справочника жанров, которая меняется только при его перезагрузке
     @GetMapping
-    @ResponseStatus(HttpStatus.OK)
-    public List<GenreDto> findAllGenre() {
-        return genreService.findAllGenre();
+    public ResponseEntity<List<GenreDto>> findAllGenre(WebRequest request) {
+        String eTag = ETags.of("genres", genreService.getVersion());
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(genreService.findAllGenre());
     }
 
     //GET /genres/{id}
+    // жанр ищется до проверки If-None-Match, чтобы несуществующий id получал 404, а не 304
     @GetMapping("/{id}")
-    @ResponseStatus(HttpStatus.OK)
-    public GenreDto findGenreById(@PathVariable int id) {
-        return genreService.findGenreById(id);
+    public ResponseEntity<GenreDto> findGenreById(@PathVariable int id, WebRequest request) {
+        GenreDto genre = genreService.findGenreById(id);
+        String eTag = ETags.of("genre", id, genreService.getVersion());
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(genre);
     }
 }
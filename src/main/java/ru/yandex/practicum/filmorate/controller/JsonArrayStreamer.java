@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+// записывает элементы в тело ответа JSON-массивом по мере их получения из источника,
+// так что на запрос в памяти держится только буфер генератора, а не весь список.
+// Число одновременных ответов и время записи ограничены StreamLimiter
+@Component
+@RequiredArgsConstructor
+public class JsonArrayStreamer {
+    private final ObjectMapper objectMapper;
+    private final StreamLimiter streamLimiter;
+
+    public <T> ResponseEntity<StreamingResponseBody> stream(Consumer<Consumer<T>> source) {
+        StreamLimiter.Permit permit = streamLimiter.acquire();
+        StreamingResponseBody body = outputStream -> {
+            try (permit; JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                generator.writeStartArray();
+                source.accept(item -> {
+                    permit.checkDeadline();
+                    try {
+                        generator.writeObject(item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+}
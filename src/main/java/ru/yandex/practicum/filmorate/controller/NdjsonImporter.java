@@ -0,0 +1,138 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.ImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.ImportReportDto;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// пакетная загрузка NDJSON (один JSON-объект на строку). Тело запроса читается построчно,
+// каждая строка разбирается и проверяется аннотациями DTO, прошедшие проверку строки копятся в пакет
+// размером batch-size и передаются в writer, который пишет пакет в базу одной транзакцией.
+// Следующие строки читаются только после записи пакета, поэтому в памяти держится один пакет,
+// а клиент, отправляющий данные быстрее записи, упирается в заполненный буфер соединения.
+// Ошибка в строке не останавливает загрузку: строка попадает в отчёт со своим номером
+@Slf4j
+@Component
+public class NdjsonImporter {
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int batchSize;
+
+    public NdjsonImporter(ObjectMapper objectMapper,
+                          Validator validator,
+                          @Value("${filmorate.import.batch-size:1000}") int batchSize) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchSize = batchSize;
+    }
+
+    // writer получает пакет и возвращает сообщения об ошибках по номерам элементов в пакете
+    public <T> ImportReportDto importLines(InputStream body, Class<T> type,
+                                           Function<List<T>, Map<Integer, String>> writer) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(type);
+        Report report = new Report();
+        List<T> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                report.lines++;
+
+                T item;
+                try {
+                    item = reader.readValue(line);
+                } catch (JsonProcessingException e) {
+                    report.fail(lineNumber, "Некорректный JSON: " + e.getOriginalMessage());
+                    continue;
+                }
+
+                Set<ConstraintViolation<T>> violations = validator.validate(item);
+                if (!violations.isEmpty()) {
+                    report.fail(lineNumber, violations.stream()
+                            .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                            .sorted()
+                            .collect(Collectors.joining(", ")));
+                    continue;
+                }
+
+                batch.add(item);
+                batchLines.add(lineNumber);
+                if (batch.size() == batchSize) {
+                    writeBatch(batch, batchLines, writer, report);
+                }
+            }
+        }
+        writeBatch(batch, batchLines, writer, report);
+
+        log.info("Загрузка NDJSON завершена: строк {}, записано {}, с ошибками {}",
+                report.lines, report.imported, report.failed);
+        return ImportReportDto.builder()
+                .lines(report.lines)
+                .imported(report.imported)
+                .failed(report.failed)
+                .errors(new ArrayList<>(report.errors.values()))
+                .build();
+    }
+
+    private <T> void writeBatch(List<T> batch, List<Long> batchLines,
+                                Function<List<T>, Map<Integer, String>> writer, Report report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            Map<Integer, String> errors = writer.apply(batch);
+            new TreeMap<>(errors).forEach((index, message) -> report.fail(batchLines.get(index), message));
+            report.imported += batch.size() - errors.size();
+        } catch (RuntimeException e) {
+            // транзакция пакета откатилась целиком: отклоняются все его строки, загрузка продолжается
+            log.warn("Не удалось записать пакет строк {}-{}", batchLines.get(0), batchLines.get(batchLines.size() - 1), e);
+            for (Long line : batchLines) {
+                report.fail(line, "Пакет не записан: " + e.getMessage());
+            }
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+
+    private static class Report {
+        private long lines;
+        private long imported;
+        private long failed;
+        // ошибки пакета добавляются после ошибок разбора следующих за ним строк, поэтому отчёт
+        // хранит ошибки по номеру строки и при переполнении отбрасывает самую позднюю строку:
+        // в отчёте всегда первые MAX_REPORTED_ERRORS строк с ошибками
+        private final TreeMap<Long, ImportErrorDto> errors = new TreeMap<>();
+
+        private void fail(long line, String message) {
+            failed++;
+            errors.put(line, ImportErrorDto.builder().line(line).message(message).build());
+            if (errors.size() > MAX_REPORTED_ERRORS) {
+                errors.pollLastEntry();
+            }
+        }
+    }
+}
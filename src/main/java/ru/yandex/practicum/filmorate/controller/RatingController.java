@@ -1,10 +1,12 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.dto.RatingDto;
 import ru.yandex.practicum.filmorate.service.RatingService;
 
@@ -17,14 +19,25 @@ public class RatingController {
     private final RatingService ratingService;
 
     //GET /mpa
+    // ETag строится по версии справочника рейтингов, которая меняется только при его перезагрузке
     @GetMapping
-    public List<RatingDto> findAllGenre() {
-        return ratingService.findAllRating();
+    public ResponseEntity<List<RatingDto>> findAllRating(WebRequest request) {
+        String eTag = ETags.of("mpa", ratingService.getVersion());
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(ratingService.findAllRating());
     }
 
     //GET /mpa/{id}
+    // рейтинг ищется до проверки If-None-Match, чтобы несуществующий id получал 404, а не 304
     @GetMapping("/{id}")
-    public RatingDto findGenreById(@PathVariable int id) {
-        return ratingService.findRatingById(id);
+    public ResponseEntity<RatingDto> findRatingById(@PathVariable int id, WebRequest request) {
+        RatingDto rating = ratingService.findRatingById(id);
+        String eTag = ETags.of("mpa", id, ratingService.getVersion());
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(rating);
     }
 }
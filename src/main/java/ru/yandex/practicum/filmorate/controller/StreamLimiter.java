@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.CommonException;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// ограничивает потоковые ответы: пока ответ пишется, он держит соединение с базой.
+// Одновременно пишется не больше max-concurrent ответов, остальные запросы сразу получают 503.
+// Ответ, не уложившийся в timeout, обрывается перед очередным элементом, и соединение возвращается в пул
+@Slf4j
+@Component
+public class StreamLimiter {
+    private final Semaphore permits;
+    private final long timeoutNanos;
+
+    public StreamLimiter(@Value("${filmorate.stream.max-concurrent:4}") int maxConcurrent,
+                         @Value("${filmorate.stream.timeout:PT1M}") Duration timeout) {
+        this.permits = new Semaphore(maxConcurrent);
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    // разрешение берётся в потоке запроса, чтобы отказ вернулся обычным ответом об ошибке,
+    // а освобождается после записи ответа
+    public Permit acquire() {
+        if (!permits.tryAcquire()) {
+            log.warn("Превышено число одновременных потоковых ответов");
+            throw new ServiceUnavailableException("Слишком много одновременных выгрузок, повторите запрос позже");
+        }
+        return new Permit(System.nanoTime() + timeoutNanos);
+    }
+
+    public class Permit implements AutoCloseable {
+        private final long deadline;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long deadline) {
+            this.deadline = deadline;
+        }
+
+        // вызывается перед записью каждого элемента
+        public void checkDeadline() {
+            if (System.nanoTime() - deadline > 0) {
+                log.warn("Потоковый ответ прерван по таймауту");
+                throw new CommonException("Превышено время выгрузки");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+// записывает строки таблицы в тело ответа в формате NDJSON (объект на строку) или CSV (с заголовком),
+// при gzip=true — сжатыми. Строки пишутся по мере их получения из источника, поэтому на выгрузку
+// в памяти держатся только буферы потоков, сколько бы строк ни было в таблице.
+// Как и у JsonArrayStreamer, число одновременных выгрузок и время записи ограничены StreamLimiter
+@Component
+@RequiredArgsConstructor
+public class TableExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+    private static final MediaType APPLICATION_GZIP = new MediaType("application", "gzip");
+
+    private final ObjectMapper objectMapper;
+    private final StreamLimiter streamLimiter;
+
+    public ResponseEntity<StreamingResponseBody> export(String name, List<String> columns,
+                                                        Consumer<Consumer<Object[]>> source,
+                                                        String format, boolean gzip) {
+        boolean csv = isCsv(format);
+        StreamLimiter.Permit permit = streamLimiter.acquire();
+        // выгрузка прерывается между строками, если время записи истекло
+        Consumer<Consumer<Object[]>> limitedSource = action -> source.accept(values -> {
+            permit.checkDeadline();
+            action.accept(values);
+        });
+        StreamingResponseBody body = outputStream -> {
+            try (permit) {
+                OutputStream target = gzip
+                        ? new GZIPOutputStream(outputStream, BUFFER_SIZE)
+                        : new BufferedOutputStream(outputStream, BUFFER_SIZE);
+                try (target) {
+                    if (csv) {
+                        writeCsv(target, columns, limitedSource);
+                    } else {
+                        writeNdjson(target, columns, limitedSource);
+                    }
+                }
+            }
+        };
+
+        String fileName = name + (csv ? ".csv" : ".ndjson") + (gzip ? ".gz" : "");
+        MediaType contentType = csv ? TEXT_CSV : MediaType.APPLICATION_NDJSON;
+        return ResponseEntity.ok()
+                .contentType(gzip ? APPLICATION_GZIP : contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+
+    private static boolean isCsv(String format) {
+        return switch (format.toLowerCase(Locale.ROOT)) {
+            case "csv" -> true;
+            case "ndjson" -> false;
+            default -> throw new ValidationException("Формат выгрузки должен быть ndjson или csv");
+        };
+    }
+
+    private void writeNdjson(OutputStream out, List<String> columns,
+                             Consumer<Consumer<Object[]>> source) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            // объекты разделяются только переводом строки
+            generator.setRootValueSeparator(null);
+            source.accept(values -> {
+                try {
+                    generator.writeStartObject();
+                    for (int i = 0; i < values.length; i++) {
+                        generator.writeFieldName(columns.get(i));
+                        generator.writeObject(values[i]);
+                    }
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static void writeCsv(OutputStream out, List<String> columns,
+                                 Consumer<Consumer<Object[]>> source) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writeCsvLine(writer, columns.toArray());
+        source.accept(values -> {
+            try {
+                writeCsvLine(writer, values);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    // строка CSV по RFC 4180; null выводится пустым полем
+    private static void writeCsvLine(Writer writer, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                writeCsvField(writer, values[i].toString());
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    // поле берётся в кавычки, если в нём есть запятая, кавычка или перевод строки; кавычки удваиваются
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
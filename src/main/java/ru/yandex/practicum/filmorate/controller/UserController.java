@@ -2,11 +2,18 @@ package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.dto.FriendshipDto;
+import ru.yandex.practicum.filmorate.dto.ImportReportDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
 import ru.yandex.practicum.filmorate.service.UserService;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -14,17 +21,41 @@ import java.util.List;
 @RequiredArgsConstructor
 public class UserController {
     private final UserService userService;
+    private final JsonArrayStreamer jsonArrayStreamer;
+    private final NdjsonImporter ndjsonImporter;
 
+    //GET /users
+    // весь список пользователей передаётся в ответ потоком, по мере чтения из хранилища
     @GetMapping
-    public Collection<UserDto> findAllUsers() {
-        return userService.findAllUsers();
+    public ResponseEntity<StreamingResponseBody> findAllUsers() {
+        return jsonArrayStreamer.stream(userService::streamAllUsers);
+    }
+
+    //GET /users?after={after}&limit={limit}
+    // постраничное получение пользователей с id больше after
+    @GetMapping(params = "limit")
+    public List<UserDto> findUsersPage(@RequestParam(defaultValue = "0") Long after, @RequestParam Integer limit) {
+        return userService.findUsersPage(after, limit);
+    }
+
+    //GET /users?after={after}
+    // after без limit отклоняется с ошибкой 400, а не игнорируется: иначе вернулся бы весь список
+    @GetMapping(params = {"after", "!limit"})
+    public List<UserDto> findUsersPageWithoutLimit(@RequestParam Long after) {
+        return userService.findUsersPage(after, null);
     }
 
     //GET /users/{id}
     // получить пользователя по id
+    // ETag строится по номеру версии пользователя, поэтому ответ 304 отдаётся без чтения пользователя.
+    // Существование пользователя проверяется до сравнения тегов: иначе If-None-Match: * дал бы 304 вместо 404
     @GetMapping("/{id}")
-    public UserDto findUserById(@PathVariable Long id) {
-        return userService.findUserById(id);
+    public ResponseEntity<UserDto> findUserById(@PathVariable Long id, WebRequest request) {
+        String eTag = ETags.of("user", id, userService.getUserVersion(id));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(userService.findUserById(id));
     }
 
     @PostMapping
@@ -32,6 +63,20 @@ public class UserController {
         return userService.create(userDto);
     }
 
+    //POST /users/import
+    // пакетная загрузка пользователей: тело — NDJSON, по пользователю на строку, в ответ отчёт с ошибками по номерам строк
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportReportDto importUsers(InputStream body) throws IOException {
+        return ndjsonImporter.importLines(body, UserDto.class, userService::importUsers);
+    }
+
+    //POST /users/friends/import
+    // пакетная загрузка дружбы: строки вида {"userId": 1, "friendId": 2}
+    @PostMapping(value = "/friends/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportReportDto importFriendships(InputStream body) throws IOException {
+        return ndjsonImporter.importLines(body, FriendshipDto.class, userService::importFriendships);
+    }
+
     @PutMapping
     public UserDto update(@Valid @RequestBody UserDto userDto) {
         return userService.update(userDto);
@@ -58,10 +103,34 @@ public class UserController {
         return userService.findAllUsersInFriends(id);
     }
 
+    //GET /users/{id}/friends?after={after}&limit={limit}
+    // постраничное получение списка друзей пользователя
+    @GetMapping(value = "/{id}/friends", params = "limit")
+    public List<UserDto> findUsersInFriendsPage(@PathVariable Long id,
+                                                @RequestParam(defaultValue = "0") Long after,
+                                                @RequestParam Integer limit) {
+        return userService.findUsersInFriendsPage(id, after, limit);
+    }
+
+    //GET /users/{id}/friends?after={after}
+    // after без limit отклоняется с ошибкой 400, как и для списка пользователей
+    @GetMapping(value = "/{id}/friends", params = {"after", "!limit"})
+    public List<UserDto> findUsersInFriendsPageWithoutLimit(@PathVariable Long id, @RequestParam Long after) {
+        return userService.findUsersInFriendsPage(id, after, null);
+    }
+
     //GET /users/{id}/friends/common/{otherId}
     // получение списка друзей, общих с другим пользователем
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<UserDto> findCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
         return userService.findCommonFriends(id, otherId);
     }
+
+    //GET /users/{id}/suggestions?count={count}
+    // возможные друзья: друзья друзей, упорядоченные по числу общих друзей
+    @GetMapping("/{id}/suggestions")
+    public List<UserDto> findFriendSuggestions(@PathVariable Long id,
+                                               @RequestParam(defaultValue = "10") Integer count) {
+        return userService.findFriendSuggestions(id, count);
+    }
 }
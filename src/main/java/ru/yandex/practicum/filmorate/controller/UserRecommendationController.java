@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.util.List;
+
+// рекомендации фильмов пользователю вынесены из UserController,
+// чтобы контроллер пользователей не зависел от сервиса фильмов
+@RestController
+@RequestMapping("/users")
+@RequiredArgsConstructor
+public class UserRecommendationController {
+    private final FilmService filmService;
+
+    //GET /users/{id}/recommendations?count={count}
+    // фильмы, которые лайкали пользователи с похожими вкусами и которые пользователь id ещё не лайкал
+    @GetMapping("/{id}/recommendations")
+    public List<FilmDto> findRecommendedFilms(@PathVariable Long id,
+                                              @RequestParam(defaultValue = "10") Integer count) {
+        return filmService.findRecommendedFilms(id, count);
+    }
+}
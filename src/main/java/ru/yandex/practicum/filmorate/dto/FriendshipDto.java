@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+// строка пакетной загрузки дружбы: пользователь userId добавляет в друзья friendId
+@Data
+@Builder
+public class FriendshipDto {
+    private long userId;
+    private long friendId;
+}
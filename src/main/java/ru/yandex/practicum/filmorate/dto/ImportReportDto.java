@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// итог пакетной загрузки NDJSON: сколько строк прочитано, записано и отклонено,
+// и причины отказа по номерам строк (не больше первых NdjsonImporter.MAX_REPORTED_ERRORS)
+@Data
+@Builder
+public class ImportReportDto {
+    private long lines;
+    private long imported;
+    private long failed;
+    private List<ImportErrorDto> errors;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+// краткий ответ на постановку и удаление лайка: вместо фильма со всеми лайками только их число
+@Data
+@Builder
+public class LikeDto {
+    private long filmId;
+    private long userId;
+    private boolean liked;
+    private long likes;
+}
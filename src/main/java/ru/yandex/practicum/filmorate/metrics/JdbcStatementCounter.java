@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// счётчик JDBC-запросов: общий (метрика filmorate.jdbc.statements) и в рамках текущего HTTP-запроса.
+// Запрос попадает в счётчик HTTP-запроса, только если выполняется в том же потоке, что и сам HTTP-запрос.
+// Запросы из других потоков (асинхронная запись потоковых ответов, фоновая запись лайков)
+// учитываются только в общем счётчике
+@Component
+public class JdbcStatementCounter implements MeterBinder {
+    private final LongAdder total = new LongAdder();
+    private final ThreadLocal<int[]> currentRequest = new ThreadLocal<>();
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("filmorate.jdbc.statements", this, JdbcStatementCounter::getTotal)
+                .description("Количество выполненных JDBC-запросов")
+                .register(meterRegistry);
+    }
+
+    void increment() {
+        total.increment();
+        int[] current = currentRequest.get();
+        if (current != null) {
+            current[0]++;
+        }
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public void startRequest() {
+        currentRequest.set(new int[1]);
+    }
+
+    // возвращает число запросов с момента startRequest и сбрасывает счётчик потока
+    public int finishRequest() {
+        int[] current = currentRequest.get();
+        currentRequest.remove();
+        return current == null ? 0 : current[0];
+    }
+}
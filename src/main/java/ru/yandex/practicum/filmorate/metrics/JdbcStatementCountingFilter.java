@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+// записывает число JDBC-запросов на каждый HTTP-запрос в распределение
+// filmorate.jdbc.statements.per.request с тегами method и uri (шаблон пути контроллера),
+// чтобы рост числа запросов на эндпоинт (N+1) был виден на дашборде
+@Component
+@RequiredArgsConstructor
+public class JdbcStatementCountingFilter extends OncePerRequestFilter {
+    private final JdbcStatementCounter jdbcStatementCounter;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        jdbcStatementCounter.startRequest();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            int statements = jdbcStatementCounter.finishRequest();
+
+            Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder("filmorate.jdbc.statements.per.request")
+                    .description("Количество JDBC-запросов на один HTTP-запрос")
+                    .tag("method", request.getMethod())
+                    .tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(statements);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.storage.ExportDbStorage;
+import ru.yandex.practicum.filmorate.storage.ExportTable;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+    private final ExportDbStorage exportDbStorage;
+
+    public List<String> getColumns(String tableName) {
+        return getTable(tableName).getColumns();
+    }
+
+    // передаёт строки таблицы в action по мере чтения из базы
+    public void streamTable(String tableName, Consumer<Object[]> action) {
+        ExportTable table = getTable(tableName);
+        log.info("Выгрузка таблицы {}.", table.getTableName());
+        exportDbStorage.streamTable(table, action);
+    }
+
+    private ExportTable getTable(String tableName) {
+        return ExportTable.of(tableName)
+                .orElseThrow(() -> {
+                    log.warn("Таблица для выгрузки {} не найдена", tableName);
+                    return new NotFoundException("Таблица для выгрузки " + tableName + " не найдена");
+                });
+    }
+}
@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.LikeDto;
 import ru.yandex.practicum.filmorate.exception.CommonException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
@@ -17,6 +18,7 @@ import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import java.text.MessageFormat;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -34,7 +36,6 @@ public class FilmDbService implements FilmService {
         log.info("Получение всех фильмов.");
         return filmStorage.getAllFilms().stream()
                 .map(FilmMapper::mapToFilmDto)
-                .peek(this::addGenreAndMpa)
                 .collect(Collectors.toList());
     }
 
@@ -42,38 +43,37 @@ public class FilmDbService implements FilmService {
         log.info("Получение фильма по id.");
         return filmStorage.getFilmById(id)
                 .map(FilmMapper::mapToFilmDto)
-                .map(film -> {
-                    addGenreAndMpa(film);
-                    return film;
-                })
                 .orElseThrow(() -> new NotFoundException("Фильм с Id " + id + " не найден"));
     }
 
+    // версия фильма для ETag: проверяется только существование фильма, сам фильм не читается
+    @Override
+    public long getFilmVersion(Long id) {
+        checkFilmExists(id);
+        return filmStorage.getVersion(id);
+    }
+
     public FilmDto create(FilmDto filmDto) {
         log.info("Добавление фильма.");
         Film film = FilmMapper.mapToFilm(filmDto);
         checkConditions(film);
         film = filmStorage.create(film);
 
-        FilmDto newFilmDto = FilmMapper.mapToFilmDto(film);
-        addGenreAndMpa(newFilmDto);
-
-        return newFilmDto;
+        // жанры и рейтинг уже заменены на экземпляры из справочника в checkConditions
+        return FilmMapper.mapToFilmDto(film);
     }
 
     public FilmDto update(FilmDto filmDto) {
         log.info("Обновление фильма.");
         Film film = FilmMapper.mapToFilm(filmDto);
         checkConditions(film);
-        if (filmStorage.getFilmById(film.getId()).isEmpty()) {
+        if (!filmStorage.existsById(film.getId())) {
             throw new NotFoundException("Фильм с названием = " + film.getName() + " не найден");
         }
         film = filmStorage.update(film);
 
-        FilmDto newFilmDto = FilmMapper.mapToFilmDto(film);
-        addGenreAndMpa(newFilmDto);
-
-        return newFilmDto;
+        // жанры и рейтинг уже заменены на экземпляры из справочника в checkConditions
+        return FilmMapper.mapToFilmDto(film);
     }
 
     //PUT /films/{id}/like/{userId}
@@ -81,20 +81,8 @@ public class FilmDbService implements FilmService {
     @Override
     public FilmDto addUserLike(Long id, Long userId) {
         log.info("Добавление лайка фильму от пользователя.");
-
-        checkId(id);
-        checkId(userId);
-
-        Film film = filmStorage.getFilmById(id)
-                .orElseThrow(() -> new NotFoundException("Фильм с Id " + id + " не найден"));
-        userService.findUserById(userId);
-
-        if (film.getLikes().contains(userId)) {
-            throw new CommonException("Вы уже поставили лайк этому фильму. Мы рады, что он вам так понравился");
-        }
-
-        film = filmStorage.addUserLike(id, userId);
-        return FilmMapper.mapToFilmDto(film);
+        addLike(id, userId);
+        return findFilmById(id);
     }
 
     //DELETE /films/{id}/like/{userId}
@@ -102,35 +90,146 @@ public class FilmDbService implements FilmService {
     @Override
     public FilmDto deleteUserLike(Long id, Long userId) {
         log.info("Удаление лайка фильму от пользователя.");
+        deleteLike(id, userId);
+        return findFilmById(id);
+    }
 
-        checkId(id);
-        checkId(userId);
+    //PUT /films/{id}/like/{userId}?compact=true
+    // пользователь ставит лайк фильму, в ответ возвращается только число лайков,
+    // поэтому стоимость запроса не зависит от того, сколько лайков у фильма уже есть
+    @Override
+    public LikeDto addUserLikeCompact(Long id, Long userId) {
+        log.info("Добавление лайка фильму от пользователя, краткий ответ.");
+        addLike(id, userId);
+        return mapToLikeDto(id, userId, true);
+    }
 
-        Film film = filmStorage.getFilmById(id)
-                .orElseThrow(() -> new NotFoundException("Фильм с Id " + id + " не найден"));
-        userService.findUserById(userId);
+    //DELETE /films/{id}/like/{userId}?compact=true
+    // пользователь удаляет лайк, в ответ возвращается только число лайков
+    @Override
+    public LikeDto deleteUserLikeCompact(Long id, Long userId) {
+        log.info("Удаление лайка фильму от пользователя, краткий ответ.");
+        deleteLike(id, userId);
+        return mapToLikeDto(id, userId, false);
+    }
 
-        if (film.getLikes().contains(userId)) {
-            filmStorage.deleteUserLike(id, userId);
+    //POST /films/import
+    // фильмы проверяются теми же правилами, что и при добавлении по одному, прошедшие проверку
+    // записываются одним пакетом; возвращает сообщения об ошибках по номерам фильмов в списке
+    @Override
+    public Map<Integer, String> importFilms(List<FilmDto> filmDtos) {
+        log.info("Пакетное добавление фильмов: {}", filmDtos.size());
+        Map<Integer, String> errors = new HashMap<>();
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < filmDtos.size(); i++) {
+            Film film = FilmMapper.mapToFilm(filmDtos.get(i));
+            try {
+                checkConditions(film);
+            } catch (ValidationException e) {
+                errors.put(i, e.getMessage());
+                continue;
+            }
+            films.add(film);
         }
 
-        return filmStorage.getFilmById(film.getId())
-                .map(FilmMapper::mapToFilmDto)
-                .orElseThrow(() -> new NotFoundException("Фильм с Id " + id + " не найден"));
+        filmStorage.createAll(films);
+        return errors;
+    }
+
+    //POST /films/likes/import
+    // лайки записываются одним пакетом без предварительных проверок,
+    // причина отказа выясняется только для строк, которые хранилище не приняло
+    @Override
+    public Map<Integer, String> importLikes(List<LikeDto> likes) {
+        log.info("Пакетное добавление лайков: {}", likes.size());
+        List<long[]> rows = likes.stream()
+                .map(like -> new long[]{like.getFilmId(), like.getUserId()})
+                .toList();
+        boolean[] added = filmStorage.addUserLikes(rows);
+
+        Map<Integer, String> errors = new HashMap<>();
+        for (int i = 0; i < likes.size(); i++) {
+            if (!added[i]) {
+                errors.put(i, rejectedLikeReason(likes.get(i)));
+            }
+        }
+        return errors;
     }
 
-    //GET /films/popular?count={count}
+    //GET /films/popular?count={count}&genreId={genreId}&year={year}
     // возвращает список из первых count фильмов по количеству лайков
     // Если значение параметра count не задано, возвращает первые 10
+    // genreId и year необязательны и ограничивают список фильмами жанра и года выпуска
     @Override
-    public List<FilmDto> findBestFilm(Long count) {
+    public List<FilmDto> findBestFilm(Long count, Integer genreId, Integer year) {
         log.info(MessageFormat.format("Возвращает список из первых {0} фильмов по количеству лайков", count));
-        return filmStorage.findBestFilm(count).stream()
+        if (genreId != null) {
+            genreService.getGenre(genreId);
+        }
+        return filmStorage.findBestFilm(count, genreId, year).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+    //GET /films/{id}/similar?count={count}
+    // возвращает фильмы, которые чаще всего лайкали вместе с фильмом id
+    @Override
+    public List<FilmDto> findSimilarFilms(Long id, Integer count) {
+        log.info("Получение фильмов, похожих на фильм с id {}", id);
+        checkId(id);
+        Paging.checkCount(count, "фильмов");
+        checkFilmExists(id);
+        return filmStorage.findSimilarFilms(id, count).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+    //GET /users/{id}/recommendations?count={count}
+    // возвращает фильмы, похожие на лайкнутые пользователем, которые он ещё не лайкал
+    @Override
+    public List<FilmDto> findRecommendedFilms(Long userId, Integer count) {
+        log.info("Получение рекомендаций фильмов для пользователя с id {}", userId);
+        checkId(userId);
+        Paging.checkCount(count, "фильмов");
+        checkUserExists(userId);
+        return filmStorage.findRecommendedFilms(userId, count).stream()
                 .map(FilmMapper::mapToFilmDto)
-                .peek(this::addGenreAndMpa)
                 .collect(Collectors.toList());
     }
 
+    //GET /films/search?query={query}&count={count}
+    // возвращает фильмы, в названии или описании которых встречаются все слова запроса
+    @Override
+    public List<FilmDto> searchFilms(String query, Integer count) {
+        log.info("Поиск фильмов по запросу: {}", query);
+        if (query == null || query.isBlank()) {
+            log.warn("Не указана строка поиска");
+            throw new ValidationException("Строка поиска должна быть указана");
+        }
+        Paging.checkCount(count, "фильмов");
+        return filmStorage.searchFilms(query, count).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+    //GET /films?after={after}&limit={limit}
+    // возвращает не более limit фильмов с id больше after, упорядоченных по id
+    @Override
+    public List<FilmDto> findFilmsPage(Long afterId, Integer limit) {
+        log.info("Получение страницы фильмов.");
+        Paging.checkPage(afterId, limit);
+        return filmStorage.getFilmsPage(afterId, limit).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+    // передаёт фильмы в action по мере чтения из хранилища, не собирая весь список в памяти
+    @Override
+    public void streamAllFilms(Consumer<FilmDto> action) {
+        log.info("Потоковое получение всех фильмов.");
+        filmStorage.streamAllFilms(film -> action.accept(FilmMapper.mapToFilmDto(film)));
+    }
+
     private void checkId(Long id) {
         if (id == null) {
             log.warn("Id должен быть указан");
@@ -138,25 +237,80 @@ public class FilmDbService implements FilmService {
         }
     }
 
+    // проверки существования по ключу и одна вставка, без чтения фильма и его лайков
+    private void addLike(Long id, Long userId) {
+        checkId(id);
+        checkId(userId);
+
+        checkFilmExists(id);
+        checkUserExists(userId);
+
+        // повторный лайк отклоняется самим хранилищем, без чтения списка лайков
+        if (!filmStorage.addUserLike(id, userId)) {
+            throw new CommonException("Вы уже поставили лайк этому фильму. Мы рады, что он вам так понравился");
+        }
+    }
+
+    private void deleteLike(Long id, Long userId) {
+        checkId(id);
+        checkId(userId);
+
+        checkFilmExists(id);
+        checkUserExists(userId);
+
+        filmStorage.deleteUserLike(id, userId);
+    }
+
+    private LikeDto mapToLikeDto(Long id, Long userId, boolean liked) {
+        return LikeDto.builder()
+                .filmId(id)
+                .userId(userId)
+                .liked(liked)
+                .likes(filmStorage.getLikesCount(id))
+                .build();
+    }
+
+    private String rejectedLikeReason(LikeDto like) {
+        if (!filmStorage.existsById(like.getFilmId())) {
+            return "Фильм с Id " + like.getFilmId() + " не найден";
+        }
+        if (!userService.existsById(like.getUserId())) {
+            return "Пользователь с id " + like.getUserId() + " не найден";
+        }
+        return "Пользователь уже поставил лайк этому фильму";
+    }
+
+    private void checkFilmExists(Long id) {
+        if (!filmStorage.existsById(id)) {
+            log.warn("Фильм с Id {} не найден", id);
+            throw new NotFoundException("Фильм с Id " + id + " не найден");
+        }
+    }
+
+    private void checkUserExists(Long userId) {
+        if (!userService.existsById(userId)) {
+            log.warn("Пользователь с id {} не найден", userId);
+            throw new NotFoundException("Пользователь с id " + userId + " не найден");
+        }
+    }
+
     private void checkConditions(Film film) {
         try {
             Rating mpa = film.getMpa();
             if (mpa != null) {
-                ratingService.findRatingById(mpa.getId());
+                film.setMpa(ratingService.getRating(mpa.getId()));
             }
 
             List<Genre> genres = film.getGenres();
             if (genres != null) {
-                Set<Genre> setGenre = new LinkedHashSet<>(genres);
-                genres = new ArrayList<>(setGenre);
-
+                Set<Genre> setGenre = new LinkedHashSet<>();
                 for (Genre genre : genres) {
                     if (genre != null) {
-                        genreService.findGenreById(genre.getId());
+                        setGenre.add(genreService.getGenre(genre.getId()));
                     }
                 }
 
-                film.setGenres(genres);
+                film.setGenres(new ArrayList<>(setGenre));
             } else {
                 film.setGenres(new ArrayList<>());
             }
@@ -169,18 +323,4 @@ public class FilmDbService implements FilmService {
             throw new ValidationException("Дата релиза — не раньше 28 декабря 1895 года");
         }
     }
-
-    private void addGenreAndMpa(FilmDto filmDto) {
-        try {
-            Long filmId = filmDto.getId();
-            Rating mpa = ratingService.getRatingOfFilm(filmId);
-            if (mpa != null) {
-                filmDto.setMpa(mpa);
-            }
-
-            filmDto.setGenres(genreService.getGenresOfFilm(filmId));
-        } catch (NotFoundException e) {
-            throw new ValidationException(e.getMessage());
-        }
-    }
 }
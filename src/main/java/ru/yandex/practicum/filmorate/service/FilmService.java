@@ -1,9 +1,12 @@
 package ru.yandex.practicum.filmorate.service;
 
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.LikeDto;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmService {
 
@@ -11,6 +14,8 @@ public interface FilmService {
 
     FilmDto findFilmById(Long id);
 
+    long getFilmVersion(Long id);
+
     FilmDto create(FilmDto filmDto);
 
     FilmDto update(FilmDto filmDto);
@@ -19,5 +24,24 @@ public interface FilmService {
 
     FilmDto deleteUserLike(Long id, Long userId);
 
-    List<FilmDto> findBestFilm(Long count);
+    LikeDto addUserLikeCompact(Long id, Long userId);
+
+    LikeDto deleteUserLikeCompact(Long id, Long userId);
+
+    List<FilmDto> findBestFilm(Long count, Integer genreId, Integer year);
+
+    List<FilmDto> findSimilarFilms(Long id, Integer count);
+
+    List<FilmDto> findRecommendedFilms(Long userId, Integer count);
+
+    List<FilmDto> searchFilms(String query, Integer count);
+
+    List<FilmDto> findFilmsPage(Long afterId, Integer limit);
+
+    void streamAllFilms(Consumer<FilmDto> action);
+
+    // пакетная загрузка: сообщения об ошибках по номерам элементов списка
+    Map<Integer, String> importFilms(List<FilmDto> films);
+
+    Map<Integer, String> importLikes(List<LikeDto> likes);
 }
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -10,7 +11,6 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -18,21 +18,48 @@ import java.util.stream.Collectors;
 public class GenreService {
     private final GenreDbStorage genreDbStorage;
 
+    // справочник жанров загружается из базы один раз при старте и заменяется целиком при обновлении
+    private volatile ReferenceTable<Genre, GenreDto> genreTable = ReferenceTable.empty();
+
+    @PostConstruct
+    public void refresh() {
+        genreTable = ReferenceTable.of(genreTable.getVersion() + 1, genreDbStorage.getAllGenre(),
+                Genre::getId, GenreMapper::mapToGenreDto);
+        log.info("Справочник жанров загружен, жанров: {}", genreTable.size());
+    }
+
+    // версия справочника для ETag, увеличивается при каждой загрузке
+    public long getVersion() {
+        return genreTable.getVersion();
+    }
+
     public List<GenreDto> findAllGenre() {
         log.info("Получение всех жанров.");
-        return genreDbStorage.getAllGenre().stream()
-                .map(GenreMapper::mapToGenreDto)
-                .collect(Collectors.toList());
+        return genreTable.getAll();
     }
 
     public GenreDto findGenreById(int id) {
         log.info("Получение жанра по id.");
-        return genreDbStorage.getGenreById(id)
-                .map(GenreMapper::mapToGenreDto)
-                .orElseThrow(() -> new NotFoundException("Жанр с Id " + id + " не найден"));
+        GenreDto genre = genreTable.findDto(id);
+        if (genre == null) {
+            throw new NotFoundException("Жанр с Id " + id + " не найден");
+        }
+        return genre;
+    }
+
+    // возвращает общий для всех фильмов экземпляр жанра из справочника
+    public Genre getGenre(int id) {
+        Genre genre = genreTable.find(id);
+        if (genre == null) {
+            throw new NotFoundException("Жанр с Id " + id + " не найден");
+        }
+        return genre;
     }
 
-    public List<Genre> getGenresOfFilm(Long id) {
-        return genreDbStorage.getGenresOfFilm(id);
+    // экземпляр жанра для строки фильма из базы: из справочника, а если жанр добавлен в базу
+    // после загрузки справочника — новый, с прочитанным из строки названием
+    public Genre resolveGenre(int id, String name) {
+        Genre genre = genreTable.find(id);
+        return genre != null ? genre : Genre.builder().id(id).name(name).build();
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.LikeDto;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mappers.FilmMapper;
@@ -14,6 +15,7 @@ import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -42,6 +44,15 @@ public class InMemoryFilmService implements FilmService {
                 .orElseThrow(() -> new NotFoundException("Фильм с Id " + id + " не найден"));
     }
 
+    // версия фильма для ETag: проверяется только существование фильма, сам фильм не читается
+    @Override
+    public long getFilmVersion(Long id) {
+        if (!filmStorage.existsById(id)) {
+            throw new NotFoundException("Фильм с Id " + id + " не найден");
+        }
+        return filmStorage.getVersion(id);
+    }
+
     @Override
     public FilmDto create(FilmDto filmDto) {
         log.info("Добавление фильма.");
@@ -76,7 +87,7 @@ public class InMemoryFilmService implements FilmService {
         userService.findUserById(userId);
 
         // если пользователь и фильм найдены и все условия соблюдены, добавляем лайк от пользователя
-        film = filmStorage.addUserLike(id, userId);
+        filmStorage.addUserLike(id, userId);
         return FilmMapper.mapToFilmDto(film);
     }
 
@@ -99,17 +110,153 @@ public class InMemoryFilmService implements FilmService {
         return FilmMapper.mapToFilmDto(film);
     }
 
-    //GET /films/popular?count={count}
+    //PUT /films/{id}/like/{userId}?compact=true
+    // пользователь ставит лайк фильму, в ответ возвращается только число лайков
+    @Override
+    public LikeDto addUserLikeCompact(Long id, Long userId) {
+        addUserLike(id, userId);
+        return mapToLikeDto(id, userId, true);
+    }
+
+    //DELETE /films/{id}/like/{userId}?compact=true
+    // пользователь удаляет лайк, в ответ возвращается только число лайков
+    @Override
+    public LikeDto deleteUserLikeCompact(Long id, Long userId) {
+        deleteUserLike(id, userId);
+        return mapToLikeDto(id, userId, false);
+    }
+
+    //POST /films/import
+    // фильмы проверяются теми же правилами, что и при добавлении по одному, прошедшие проверку
+    // записываются одним пакетом; возвращает сообщения об ошибках по номерам фильмов в списке
+    @Override
+    public Map<Integer, String> importFilms(List<FilmDto> filmDtos) {
+        log.info("Пакетное добавление фильмов: {}", filmDtos.size());
+        Map<Integer, String> errors = new HashMap<>();
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < filmDtos.size(); i++) {
+            Film film = FilmMapper.mapToFilm(filmDtos.get(i));
+            try {
+                checkConditions(film);
+            } catch (ValidationException e) {
+                errors.put(i, e.getMessage());
+                continue;
+            }
+            films.add(film);
+        }
+
+        filmStorage.createAll(films);
+        return errors;
+    }
+
+    //POST /films/likes/import
+    // хранилище фильмов не знает о пользователях, поэтому они проверяются здесь
+    @Override
+    public Map<Integer, String> importLikes(List<LikeDto> likes) {
+        log.info("Пакетное добавление лайков: {}", likes.size());
+        Map<Integer, String> errors = new HashMap<>();
+        List<long[]> rows = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < likes.size(); i++) {
+            LikeDto like = likes.get(i);
+            if (!userService.existsById(like.getUserId())) {
+                errors.put(i, "Пользователь с id " + like.getUserId() + " не найден");
+                continue;
+            }
+            rows.add(new long[]{like.getFilmId(), like.getUserId()});
+            positions.add(i);
+        }
+
+        boolean[] added = filmStorage.addUserLikes(rows);
+        for (int i = 0; i < rows.size(); i++) {
+            if (!added[i]) {
+                long filmId = rows.get(i)[0];
+                errors.put(positions.get(i), filmStorage.existsById(filmId)
+                        ? "Пользователь уже поставил лайк этому фильму"
+                        : "Фильм с Id " + filmId + " не найден");
+            }
+        }
+        return errors;
+    }
+
+    //GET /films/popular?count={count}&genreId={genreId}&year={year}
     // возвращает список из первых count фильмов по количеству лайков
     // Если значение параметра count не задано, возвращает первые 10
-    public List<FilmDto> findBestFilm(Long count) {
+    // genreId и year необязательны и ограничивают список фильмами жанра и года выпуска
+    public List<FilmDto> findBestFilm(Long count, Integer genreId, Integer year) {
+        if (genreId != null) {
+            genreService.getGenre(genreId);
+        }
+        return filmStorage.findBestFilm(count, genreId, year).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
 
-        return filmStorage.getAllFilms().stream()
+    //GET /films/{id}/similar?count={count}
+    // возвращает фильмы, которые чаще всего лайкали вместе с фильмом id
+    @Override
+    public List<FilmDto> findSimilarFilms(Long id, Integer count) {
+        checkId(id);
+        Paging.checkCount(count, "фильмов");
+        if (!filmStorage.existsById(id)) {
+            throw new NotFoundException("Фильм с Id " + id + " не найден");
+        }
+        return filmStorage.findSimilarFilms(id, count).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+    //GET /users/{id}/recommendations?count={count}
+    // возвращает фильмы, похожие на лайкнутые пользователем, которые он ещё не лайкал
+    @Override
+    public List<FilmDto> findRecommendedFilms(Long userId, Integer count) {
+        checkId(userId);
+        Paging.checkCount(count, "фильмов");
+        userService.findUserById(userId);
+        return filmStorage.findRecommendedFilms(userId, count).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+    //GET /films/search?query={query}&count={count}
+    // возвращает фильмы, в названии или описании которых встречаются все слова запроса
+    @Override
+    public List<FilmDto> searchFilms(String query, Integer count) {
+        if (query == null || query.isBlank()) {
+            log.warn("Не указана строка поиска");
+            throw new ValidationException("Строка поиска должна быть указана");
+        }
+        Paging.checkCount(count, "фильмов");
+        return filmStorage.searchFilms(query, count).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+    //GET /films?after={after}&limit={limit}
+    // возвращает не более limit фильмов с id больше after, упорядоченных по id
+    @Override
+    public List<FilmDto> findFilmsPage(Long afterId, Integer limit) {
+        log.info("Получение страницы фильмов.");
+        Paging.checkPage(afterId, limit);
+        return filmStorage.getFilmsPage(afterId, limit).stream()
                 .map(FilmMapper::mapToFilmDto)
-                .sorted(Comparator.comparing((film) -> film.getLikes().size()))
-                .limit(count)
-                .toList()
-                .reversed();
+                .collect(Collectors.toList());
+    }
+
+    // передаёт фильмы в action по мере чтения из хранилища, не собирая весь список в памяти
+    @Override
+    public void streamAllFilms(Consumer<FilmDto> action) {
+        log.info("Потоковое получение всех фильмов.");
+        filmStorage.streamAllFilms(film -> action.accept(FilmMapper.mapToFilmDto(film)));
+    }
+
+    private LikeDto mapToLikeDto(Long id, Long userId, boolean liked) {
+        return LikeDto.builder()
+                .filmId(id)
+                .userId(userId)
+                .liked(liked)
+                .likes(filmStorage.getLikesCount(id))
+                .build();
     }
 
     private void checkId(Long id) {
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.FriendshipDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
@@ -12,6 +13,7 @@ import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -36,6 +38,20 @@ public class InMemoryUserService implements UserService {
                 .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден"));
     }
 
+    // версия пользователя для ETag: проверяется только существование пользователя, сам он не читается
+    @Override
+    public long getUserVersion(Long id) {
+        if (!userStorage.existsById(id)) {
+            throw new NotFoundException("Пользователь с id " + id + " не найден");
+        }
+        return userStorage.getVersion(id);
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return userStorage.existsById(id);
+    }
+
     @Override
     public UserDto create(UserDto dto) {
         log.info("Добавление пользователя.");
@@ -141,6 +157,110 @@ public class InMemoryUserService implements UserService {
                 .collect(Collectors.toList());
     }
 
+    //GET /users/{id}/suggestions?count={count}
+    // возможные друзья: друзья друзей пользователя по убыванию числа общих друзей
+    @Override
+    public List<UserDto> findFriendSuggestions(Long id, Integer count) {
+        log.info("Получение возможных друзей пользователя.");
+        checkId(id);
+        Paging.checkCount(count, "пользователей");
+        return userStorage.findFriendSuggestions(id, count).stream()
+                .map(UserMapper::mapToUserDto)
+                .collect(Collectors.toList());
+    }
+
+    //POST /users/import
+    // пользователи проверяются теми же правилами, что и при добавлении по одному, прошедшие проверку
+    // записываются одним пакетом; возвращает сообщения об ошибках по номерам пользователей в списке
+    @Override
+    public Map<Integer, String> importUsers(List<UserDto> userDtos) {
+        log.info("Пакетное добавление пользователей: {}", userDtos.size());
+        Map<Integer, String> errors = new HashMap<>();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < userDtos.size(); i++) {
+            User user = UserMapper.mapToUser(userDtos.get(i));
+            // без этих полей пользователя нельзя записать в базу
+            if (user.getEmail() == null || user.getLogin() == null || user.getBirthday() == null) {
+                errors.put(i, "Должны быть указаны email, логин и дата рождения");
+                continue;
+            }
+            try {
+                checkConditions(user);
+            } catch (ValidationException e) {
+                errors.put(i, e.getMessage());
+                continue;
+            }
+            users.add(user);
+        }
+
+        userStorage.createAll(users);
+        return errors;
+    }
+
+    //POST /users/friends/import
+    // дружба записывается одним пакетом без предварительных проверок,
+    // причина отказа выясняется только для строк, которые хранилище не приняло
+    @Override
+    public Map<Integer, String> importFriendships(List<FriendshipDto> friendships) {
+        log.info("Пакетное добавление в друзья: {}", friendships.size());
+        Map<Integer, String> errors = new HashMap<>();
+        List<long[]> rows = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < friendships.size(); i++) {
+            FriendshipDto friendship = friendships.get(i);
+            if (friendship.getUserId() == friendship.getFriendId()) {
+                errors.put(i, "Id пользователей не могут быть одинаковыми");
+                continue;
+            }
+            rows.add(new long[]{friendship.getUserId(), friendship.getFriendId()});
+            positions.add(i);
+        }
+
+        boolean[] added = userStorage.addUsersInFriends(rows);
+        for (int i = 0; i < rows.size(); i++) {
+            if (!added[i]) {
+                errors.put(positions.get(i), rejectedFriendshipReason(rows.get(i)));
+            }
+        }
+        return errors;
+    }
+
+    //GET /users?after={after}&limit={limit}
+    // возвращает не более limit пользователей с id больше after, упорядоченных по id
+    @Override
+    public List<UserDto> findUsersPage(Long afterId, Integer limit) {
+        log.info("Получение страницы пользователей.");
+        Paging.checkPage(afterId, limit);
+        return userStorage.getUsersPage(afterId, limit).stream()
+                .map(UserMapper::mapToUserDto)
+                .collect(Collectors.toList());
+    }
+
+    //GET /users/{id}/friends?after={after}&limit={limit}
+    // постраничное получение списка друзей пользователя
+    @Override
+    public List<UserDto> findUsersInFriendsPage(Long id, Long afterId, Integer limit) {
+        log.info("Получение страницы друзей пользователя.");
+
+        // проверяем необходимые условия
+        checkId(id);
+        Paging.checkPage(afterId, limit);
+
+        userStorage.getUserById(id)
+                .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден"));
+
+        return userStorage.findUsersInFriendsPage(id, afterId, limit).stream()
+                .map(UserMapper::mapToUserDto)
+                .collect(Collectors.toList());
+    }
+
+    // передаёт пользователей в action по мере чтения из хранилища, не собирая весь список в памяти
+    @Override
+    public void streamAllUsers(Consumer<UserDto> action) {
+        log.info("Потоковое получение всех пользователей.");
+        userStorage.streamAllUsers(user -> action.accept(UserMapper.mapToUserDto(user)));
+    }
+
     private void checkId(Long id) {
         if (id == null) {
             log.warn("Id должен быть указан");
@@ -148,6 +268,15 @@ public class InMemoryUserService implements UserService {
         }
     }
 
+    private String rejectedFriendshipReason(long[] friendship) {
+        for (long id : friendship) {
+            if (!userStorage.existsById(id)) {
+                return "Пользователь с id " + id + " не найден";
+            }
+        }
+        return "Вы уже добавили этого пользователя в друзья";
+    }
+
     private void checkEqualsIds(Long id, Long otherId) {
         if (id.equals(otherId)) {
             log.warn("Id пользователей не могут быть одинаковыми");
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+// общие проверки параметров постраничных запросов для сервисов фильмов и пользователей
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class Paging {
+    static final int MAX_PAGE_SIZE = 1000;
+
+    static void checkPage(Long afterId, Integer limit) {
+        if (afterId == null || afterId < 0) {
+            log.warn("Некорректное значение after: {}", afterId);
+            throw new ValidationException("Значение after не может быть отрицательным");
+        }
+
+        if (limit == null || limit < 1 || limit > MAX_PAGE_SIZE) {
+            log.warn("Некорректный размер страницы: {}", limit);
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+
+    // count — число запрашиваемых фильмов или пользователей, entities — их название в сообщении
+    static void checkCount(Integer count, String entities) {
+        if (count == null || count < 1 || count > MAX_PAGE_SIZE) {
+            log.warn("Некорректное количество {}: {}", entities, count);
+            throw new ValidationException("Количество " + entities + " должно быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -10,7 +11,6 @@ import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.storage.RatingDbStorage;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -18,21 +18,48 @@ import java.util.stream.Collectors;
 public class RatingService {
     private final RatingDbStorage ratingDbStorage;
 
+    // справочник рейтингов загружается из базы один раз при старте и заменяется целиком при обновлении
+    private volatile ReferenceTable<Rating, RatingDto> ratingTable = ReferenceTable.empty();
+
+    @PostConstruct
+    public void refresh() {
+        ratingTable = ReferenceTable.of(ratingTable.getVersion() + 1, ratingDbStorage.getAllRating(),
+                Rating::getId, RatingMapper::mapToRatingDto);
+        log.info("Справочник рейтингов загружен, рейтингов: {}", ratingTable.size());
+    }
+
+    // версия справочника для ETag, увеличивается при каждой загрузке
+    public long getVersion() {
+        return ratingTable.getVersion();
+    }
+
     public List<RatingDto> findAllRating() {
         log.info("Получение всех рейтингов.");
-        return ratingDbStorage.getAllRating().stream()
-                .map(RatingMapper::mapToRatingDto)
-                .collect(Collectors.toList());
+        return ratingTable.getAll();
     }
 
     public RatingDto findRatingById(int id) {
         log.info("Получение рейтинга по id.");
-        return ratingDbStorage.getRatingById(id)
-                .map(RatingMapper::mapToRatingDto)
-                .orElseThrow(() -> new NotFoundException("Рейтинг с Id " + id + " не найден"));
+        RatingDto rating = ratingTable.findDto(id);
+        if (rating == null) {
+            throw new NotFoundException("Рейтинг с Id " + id + " не найден");
+        }
+        return rating;
+    }
+
+    // возвращает общий для всех фильмов экземпляр рейтинга из справочника
+    public Rating getRating(int id) {
+        Rating rating = ratingTable.find(id);
+        if (rating == null) {
+            throw new NotFoundException("Рейтинг с Id " + id + " не найден");
+        }
+        return rating;
     }
 
-    public Rating getRatingOfFilm(Long id) {
-        return ratingDbStorage.getRatingOfFilm(id);
+    // экземпляр рейтинга для строки фильма из базы: из справочника, а если рейтинг добавлен в базу
+    // после загрузки справочника — новый, с прочитанным из строки названием
+    public Rating resolveRating(int id, String name) {
+        Rating rating = ratingTable.find(id);
+        return rating != null ? rating : Rating.builder().id(id).name(name).build();
     }
 }
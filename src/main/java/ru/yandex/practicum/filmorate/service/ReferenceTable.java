@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// справочник (жанры, рейтинги), загруженный из базы целиком; индекс в списках совпадает с id записи.
+// Экземпляры моделей общие для всех фильмов, DTO строятся один раз при загрузке.
+// Справочник неизменяемый: при перезагрузке сервис заменяет его новым с версией на 1 больше
+final class ReferenceTable<M, D> {
+    private final long version;
+    private final List<M> modelsById;
+    private final List<D> dtosById;
+    private final List<D> allDtos;
+
+    private ReferenceTable(long version, List<M> modelsById, List<D> dtosById, List<D> allDtos) {
+        this.version = version;
+        this.modelsById = modelsById;
+        this.dtosById = dtosById;
+        this.allDtos = allDtos;
+    }
+
+    static <M, D> ReferenceTable<M, D> empty() {
+        return new ReferenceTable<>(0, List.of(), List.of(), List.of());
+    }
+
+    static <M, D> ReferenceTable<M, D> of(long version, List<M> models,
+                                          ToIntFunction<M> idOf, Function<M, D> toDto) {
+        int maxId = models.stream()
+                .mapToInt(idOf)
+                .max()
+                .orElse(0);
+        List<M> modelsById = new ArrayList<>(Collections.nCopies(maxId + 1, null));
+        List<D> dtosById = new ArrayList<>(Collections.nCopies(maxId + 1, null));
+        List<D> allDtos = new ArrayList<>(models.size());
+        for (M model : models) {
+            D dto = toDto.apply(model);
+            modelsById.set(idOf.applyAsInt(model), model);
+            dtosById.set(idOf.applyAsInt(model), dto);
+            allDtos.add(dto);
+        }
+        return new ReferenceTable<>(version, modelsById, dtosById, Collections.unmodifiableList(allDtos));
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    // модель по id или null, если такой записи в справочнике нет
+    M find(int id) {
+        return id >= 0 && id < modelsById.size() ? modelsById.get(id) : null;
+    }
+
+    D findDto(int id) {
+        return id >= 0 && id < dtosById.size() ? dtosById.get(id) : null;
+    }
+
+    List<D> getAll() {
+        return allDtos;
+    }
+
+    int size() {
+        return allDtos.size();
+    }
+}
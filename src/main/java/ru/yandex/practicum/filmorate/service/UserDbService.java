@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.FriendshipDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
 import ru.yandex.practicum.filmorate.exception.CommonException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
@@ -11,10 +12,10 @@ import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mappers.UserMapper;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
-import ru.yandex.practicum.filmorate.storage.mappers.UserRowMapper;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -23,7 +24,6 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class UserDbService implements UserService {
     private final UserStorage userStorage;
-    private final UserRowMapper userRowMapper;
 
     public Collection<UserDto> findAllUsers() {
         log.info("Получение списка всех пользователей.");
@@ -39,6 +39,18 @@ public class UserDbService implements UserService {
                 .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден"));
     }
 
+    // версия пользователя для ETag: проверяется только существование пользователя, сам он не читается
+    @Override
+    public long getUserVersion(Long id) {
+        checkUserExists(id);
+        return userStorage.getVersion(id);
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return userStorage.existsById(id);
+    }
+
     public UserDto create(UserDto dto) {
         log.info("Добавление пользователя.");
         User user = UserMapper.mapToUser(dto);
@@ -51,7 +63,7 @@ public class UserDbService implements UserService {
         log.info("Обновление пользователя.");
         User user = UserMapper.mapToUser(userDto);
 
-        if (userStorage.getUserById(user.getId()).isEmpty()) {
+        if (!userStorage.existsById(user.getId())) {
             throw new NotFoundException("Пользователь с email = " + user.getEmail() + " не найден");
         }
 
@@ -72,19 +84,15 @@ public class UserDbService implements UserService {
 
         checkEqualsIds(id, friendId);
 
-        User user = userStorage.getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден"));
+        checkUserExists(id);
         User friend = userStorage.getUserById(friendId)
                 .orElseThrow(() -> new NotFoundException("Пользователь с id " + friendId + " не найден"));
 
-        if (user.getFriends().contains(friendId)) {
+        // повторное добавление отклоняется самим хранилищем, без чтения списка друзей
+        if (!userStorage.addUserInFriends(id, friendId)) {
             throw new CommonException("Вы уже добавили этого пользователя в друзья");
         }
 
-        userStorage.addUserInFriends(id, friendId);
-
-        userRowMapper.setFriendsOfUser(user);
-
         return UserMapper.mapToUserDto(friend);
     }
 
@@ -99,17 +107,13 @@ public class UserDbService implements UserService {
 
         checkEqualsIds(id, friendId);
 
-        User user = userStorage.getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден"));
-        User friend = userStorage.getUserById(friendId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + friendId + " не найден"));
+        checkUserExists(id);
+        checkUserExists(friendId);
 
         // если пользователь найден и все условия соблюдены, удаляем его из друзей
-        if (user.getFriends().contains(friendId)) {
-            userStorage.deleteUserFromFriends(id, friendId);
-        }
+        userStorage.deleteUserFromFriends(id, friendId);
 
-        return userStorage.getUserById(user.getId())
+        return userStorage.getUserById(id)
                 .map(UserMapper::mapToUserDto)
                 .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден"));
     }
@@ -122,8 +126,7 @@ public class UserDbService implements UserService {
         // проверяем необходимые условия
         checkId(id);
 
-        User user = userStorage.getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден"));
+        checkUserExists(id);
 
         // если пользователь найден и все условия соблюдены, то
         // получаем список пользователей, являющихся друзьями пользователя.
@@ -150,6 +153,110 @@ public class UserDbService implements UserService {
                 .collect(Collectors.toList());
     }
 
+    //GET /users/{id}/suggestions?count={count}
+    // возможные друзья: друзья друзей пользователя по убыванию числа общих друзей
+    @Override
+    public List<UserDto> findFriendSuggestions(Long id, Integer count) {
+        log.info("Получение возможных друзей пользователя.");
+        checkId(id);
+        Paging.checkCount(count, "пользователей");
+        checkUserExists(id);
+        return userStorage.findFriendSuggestions(id, count).stream()
+                .map(UserMapper::mapToUserDto)
+                .collect(Collectors.toList());
+    }
+
+    //POST /users/import
+    // пользователи проверяются теми же правилами, что и при добавлении по одному, прошедшие проверку
+    // записываются одним пакетом; возвращает сообщения об ошибках по номерам пользователей в списке
+    @Override
+    public Map<Integer, String> importUsers(List<UserDto> userDtos) {
+        log.info("Пакетное добавление пользователей: {}", userDtos.size());
+        Map<Integer, String> errors = new HashMap<>();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < userDtos.size(); i++) {
+            User user = UserMapper.mapToUser(userDtos.get(i));
+            // без этих полей пользователя нельзя записать в базу
+            if (user.getEmail() == null || user.getLogin() == null || user.getBirthday() == null) {
+                errors.put(i, "Должны быть указаны email, логин и дата рождения");
+                continue;
+            }
+            try {
+                checkConditions(user);
+            } catch (ValidationException e) {
+                errors.put(i, e.getMessage());
+                continue;
+            }
+            users.add(user);
+        }
+
+        userStorage.createAll(users);
+        return errors;
+    }
+
+    //POST /users/friends/import
+    // дружба записывается одним пакетом без предварительных проверок,
+    // причина отказа выясняется только для строк, которые хранилище не приняло
+    @Override
+    public Map<Integer, String> importFriendships(List<FriendshipDto> friendships) {
+        log.info("Пакетное добавление в друзья: {}", friendships.size());
+        Map<Integer, String> errors = new HashMap<>();
+        List<long[]> rows = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < friendships.size(); i++) {
+            FriendshipDto friendship = friendships.get(i);
+            if (friendship.getUserId() == friendship.getFriendId()) {
+                errors.put(i, "Id пользователей не могут быть одинаковыми");
+                continue;
+            }
+            rows.add(new long[]{friendship.getUserId(), friendship.getFriendId()});
+            positions.add(i);
+        }
+
+        boolean[] added = userStorage.addUsersInFriends(rows);
+        for (int i = 0; i < rows.size(); i++) {
+            if (!added[i]) {
+                errors.put(positions.get(i), rejectedFriendshipReason(rows.get(i)));
+            }
+        }
+        return errors;
+    }
+
+    //GET /users?after={after}&limit={limit}
+    // возвращает не более limit пользователей с id больше after, упорядоченных по id
+    @Override
+    public List<UserDto> findUsersPage(Long afterId, Integer limit) {
+        log.info("Получение страницы пользователей.");
+        Paging.checkPage(afterId, limit);
+        return userStorage.getUsersPage(afterId, limit).stream()
+                .map(UserMapper::mapToUserDto)
+                .collect(Collectors.toList());
+    }
+
+    //GET /users/{id}/friends?after={after}&limit={limit}
+    // постраничное получение списка друзей пользователя
+    @Override
+    public List<UserDto> findUsersInFriendsPage(Long id, Long afterId, Integer limit) {
+        log.info("Получение страницы друзей пользователя.");
+
+        // проверяем необходимые условия
+        checkId(id);
+        Paging.checkPage(afterId, limit);
+
+        checkUserExists(id);
+
+        return userStorage.findUsersInFriendsPage(id, afterId, limit).stream()
+                .map(UserMapper::mapToUserDto)
+                .collect(Collectors.toList());
+    }
+
+    // передаёт пользователей в action по мере чтения из хранилища, не собирая весь список в памяти
+    @Override
+    public void streamAllUsers(Consumer<UserDto> action) {
+        log.info("Потоковое получение всех пользователей.");
+        userStorage.streamAllUsers(user -> action.accept(UserMapper.mapToUserDto(user)));
+    }
+
     private void checkId(Long id) {
         if (id == null) {
             log.warn("Id должен быть указан");
@@ -157,6 +264,22 @@ public class UserDbService implements UserService {
         }
     }
 
+    private void checkUserExists(Long id) {
+        if (!userStorage.existsById(id)) {
+            log.warn("Пользователь с id {} не найден", id);
+            throw new NotFoundException("Пользователь с id " + id + " не найден");
+        }
+    }
+
+    private String rejectedFriendshipReason(long[] friendship) {
+        for (long id : friendship) {
+            if (!userStorage.existsById(id)) {
+                return "Пользователь с id " + id + " не найден";
+            }
+        }
+        return "Вы уже добавили этого пользователя в друзья";
+    }
+
     private void checkEqualsIds(Long id, Long otherId) {
         if (id.equals(otherId)) {
             log.warn("Id пользователей не могут быть одинаковыми");
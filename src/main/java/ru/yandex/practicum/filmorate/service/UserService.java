@@ -1,9 +1,12 @@
 package ru.yandex.practicum.filmorate.service;
 
+import ru.yandex.practicum.filmorate.dto.FriendshipDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 
 public interface UserService {
@@ -12,6 +15,10 @@ public interface UserService {
 
     UserDto findUserById(Long id);
 
+    long getUserVersion(Long id);
+
+    boolean existsById(Long id);
+
     UserDto create(UserDto dto);
 
     UserDto update(UserDto userDto);
@@ -23,4 +30,17 @@ public interface UserService {
     List<UserDto> findAllUsersInFriends(Long id);
 
     List<UserDto> findCommonFriends(Long id, Long otherId);
+
+    List<UserDto> findFriendSuggestions(Long id, Integer count);
+
+    List<UserDto> findUsersPage(Long afterId, Integer limit);
+
+    List<UserDto> findUsersInFriendsPage(Long id, Long afterId, Integer limit);
+
+    void streamAllUsers(Consumer<UserDto> action);
+
+    // пакетная загрузка: сообщения об ошибках по номерам элементов списка
+    Map<Integer, String> importUsers(List<UserDto> users);
+
+    Map<Integer, String> importFriendships(List<FriendshipDto> friendships);
 }
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// изменения индексов и версий в памяти, которые должны стать видны только вместе с данными в базе:
+// внутри транзакции действие выполняется после её фиксации и пропускается при откате, вне транзакции — сразу.
+// Действие выполняется уже без транзакции, поэтому другие AfterCommit.run из него вызывать нельзя
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class AfterCommit {
+
+    static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
+
+// кэш фильмов по id поверх FilmDbStorage (Caffeine, вытеснение W-TinyLFU).
+// Размер и время жизни записи ограничены filmorate.cache.films.*, запись фильма удаляется из кэша
+// после его обновления и изменения лайков. Загрузка и удаление записи идут под блокировкой ключа,
+// поэтому значение, прочитанное из базы до изменения, не останется в кэше после удаления.
+// Изменения в обход этого бина (другие экземпляры приложения, прямые запросы к базе)
+// становятся видны не позже чем через expire-after-write-seconds.
+// Метрики: cache.gets (result=hit|miss), cache.evictions, cache.size с тегом cache=films
+@Primary
+@Repository
+public class CachingFilmStorage implements FilmStorage {
+    private final FilmDbStorage filmDbStorage;
+    private final Cache<Long, Film> films;
+
+    public CachingFilmStorage(FilmDbStorage filmDbStorage,
+                              MeterRegistry meterRegistry,
+                              @Value("${filmorate.cache.films.maximum-size:10000}") long maximumSize,
+                              @Value("${filmorate.cache.films.expire-after-write-seconds:600}") long expireAfterWriteSeconds) {
+        this.filmDbStorage = filmDbStorage;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWriteSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, films, "films");
+    }
+
+    @Override
+    public Collection<Film> getAllFilms() {
+        return filmDbStorage.getAllFilms();
+    }
+
+    // отсутствующий фильм не кэшируется: созданный позже фильм сразу станет виден
+    @Override
+    public Optional<Film> getFilmById(Long id) {
+        return Optional.ofNullable(films.get(id, key -> filmDbStorage.getFilmById(key).orElse(null)));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return films.getIfPresent(id) != null || filmDbStorage.existsById(id);
+    }
+
+    @Override
+    public long getVersion(Long id) {
+        return filmDbStorage.getVersion(id);
+    }
+
+    @Override
+    public Film create(Film newFilm) {
+        return filmDbStorage.create(newFilm);
+    }
+
+    @Override
+    public Film update(Film newFilm) {
+        try {
+            return filmDbStorage.update(newFilm);
+        } finally {
+            films.invalidate(newFilm.getId());
+        }
+    }
+
+    @Override
+    public boolean addUserLike(Long id, Long userId) {
+        boolean added = filmDbStorage.addUserLike(id, userId);
+        if (added) {
+            films.invalidate(id);
+        }
+        return added;
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return filmDbStorage.createAll(films);
+    }
+
+    @Override
+    public boolean[] addUserLikes(List<long[]> likes) {
+        boolean[] added = filmDbStorage.addUserLikes(likes);
+        for (int i = 0; i < likes.size(); i++) {
+            if (added[i]) {
+                films.invalidate(likes.get(i)[0]);
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean deleteUserLike(Long id, Long userId) {
+        boolean deleted = filmDbStorage.deleteUserLike(id, userId);
+        if (deleted) {
+            films.invalidate(id);
+        }
+        return deleted;
+    }
+
+    @Override
+    public long getLikesCount(Long id) {
+        return filmDbStorage.getLikesCount(id);
+    }
+
+    @Override
+    public List<Film> findBestFilm(Long count, Integer genreId, Integer year) {
+        return filmDbStorage.findBestFilm(count, genreId, year);
+    }
+
+    @Override
+    public List<Film> findSimilarFilms(Long id, int count) {
+        return filmDbStorage.findSimilarFilms(id, count);
+    }
+
+    @Override
+    public List<Film> findRecommendedFilms(Long userId, int count) {
+        return filmDbStorage.findRecommendedFilms(userId, count);
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, int count) {
+        return filmDbStorage.searchFilms(query, count);
+    }
+
+    // фильмы, которых нет в кэше, загружаются одним запросом; порядок id сохраняется
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Film> filmsById = films.getAll(ids, missingIds -> {
+            Map<Long, Film> loaded = new HashMap<>();
+            for (Film film : filmDbStorage.getFilmsByIds(new ArrayList<>(missingIds))) {
+                loaded.put(film.getId(), film);
+            }
+            return loaded;
+        });
+
+        return ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public List<Film> getFilmsPage(Long afterId, int limit) {
+        return filmDbStorage.getFilmsPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> action) {
+        filmDbStorage.streamAllFilms(action);
+    }
+}
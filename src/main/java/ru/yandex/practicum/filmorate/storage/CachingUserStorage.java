@@ -0,0 +1,139 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// кэш пользователей по id поверх UserDbStorage, устроен так же, как CachingFilmStorage.
+// Запись пользователя удаляется из кэша после его обновления и изменения списка его друзей
+// (дружба в базе направленная, поэтому меняется только пользователь, который добавляет друга).
+// Метрики: cache.gets, cache.evictions, cache.size с тегом cache=users
+@Primary
+@Repository
+public class CachingUserStorage implements UserStorage {
+    private final UserDbStorage userDbStorage;
+    private final Cache<Long, User> users;
+
+    public CachingUserStorage(UserDbStorage userDbStorage,
+                              MeterRegistry meterRegistry,
+                              @Value("${filmorate.cache.users.maximum-size:10000}") long maximumSize,
+                              @Value("${filmorate.cache.users.expire-after-write-seconds:600}") long expireAfterWriteSeconds) {
+        this.userDbStorage = userDbStorage;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWriteSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    @Override
+    public Collection<User> getAllUsers() {
+        return userDbStorage.getAllUsers();
+    }
+
+    // отсутствующий пользователь не кэшируется: созданный позже пользователь сразу станет виден
+    @Override
+    public Optional<User> getUserById(Long id) {
+        return Optional.ofNullable(users.get(id, key -> userDbStorage.getUserById(key).orElse(null)));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return users.getIfPresent(id) != null || userDbStorage.existsById(id);
+    }
+
+    @Override
+    public long getVersion(Long id) {
+        return userDbStorage.getVersion(id);
+    }
+
+    @Override
+    public User create(User user) {
+        return userDbStorage.create(user);
+    }
+
+    @Override
+    public List<User> createAll(List<User> newUsers) {
+        return userDbStorage.createAll(newUsers);
+    }
+
+    @Override
+    public User update(User newUser) {
+        try {
+            return userDbStorage.update(newUser);
+        } finally {
+            users.invalidate(newUser.getId());
+        }
+    }
+
+    @Override
+    public boolean addUserInFriends(Long id, Long friendId) {
+        boolean added = userDbStorage.addUserInFriends(id, friendId);
+        if (added) {
+            users.invalidate(id);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean[] addUsersInFriends(List<long[]> friendships) {
+        boolean[] added = userDbStorage.addUsersInFriends(friendships);
+        for (int i = 0; i < friendships.size(); i++) {
+            if (added[i]) {
+                users.invalidate(friendships.get(i)[0]);
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean deleteUserFromFriends(Long id, Long friendId) {
+        boolean deleted = userDbStorage.deleteUserFromFriends(id, friendId);
+        if (deleted) {
+            users.invalidate(id);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<User> findAllUsersInFriends(Long id) {
+        return userDbStorage.findAllUsersInFriends(id);
+    }
+
+    @Override
+    public List<User> findCommonFriends(Long id, Long otherId) {
+        return userDbStorage.findCommonFriends(id, otherId);
+    }
+
+    @Override
+    public List<User> findFriendSuggestions(Long id, int count) {
+        return userDbStorage.findFriendSuggestions(id, count);
+    }
+
+    @Override
+    public List<User> getUsersPage(Long afterId, int limit) {
+        return userDbStorage.getUsersPage(afterId, limit);
+    }
+
+    @Override
+    public List<User> findUsersInFriendsPage(Long id, Long afterId, int limit) {
+        return userDbStorage.findUsersInFriendsPage(id, afterId, limit);
+    }
+
+    @Override
+    public void streamAllUsers(Consumer<User> action) {
+        userDbStorage.streamAllUsers(action);
+    }
+}
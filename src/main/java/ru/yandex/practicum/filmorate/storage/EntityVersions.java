@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// номера версий сущностей (фильмов или пользователей), по которым строятся ETag.
+// Версия увеличивается после каждого изменения сущности; внутри транзакции — только после её фиксации,
+// чтобы новая версия никогда не оказалась у старого содержимого. Версия ещё не менявшейся сущности — 0
+public class EntityVersions {
+    private final ConcurrentMap<Long, Long> versions = new ConcurrentHashMap<>();
+
+    public long get(long id) {
+        return versions.getOrDefault(id, 0L);
+    }
+
+    public void bump(long id) {
+        AfterCommit.run(() -> increment(id));
+    }
+
+    private void increment(long id) {
+        versions.merge(id, 1L, Long::sum);
+    }
+}
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.function.Consumer;
+
+// построчная выгрузка таблиц для аналитики: строки читаются из ResultSet только вперёд
+// и сразу передаются дальше, поэтому память не зависит от размера таблицы
+@Repository
+@RequiredArgsConstructor
+@Timed(value = "filmorate.storage", histogram = true)
+public class ExportDbStorage {
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // передаёт в action значения столбцов каждой строки в порядке table.getColumns();
+    // массив значений один на всю выгрузку и перезаписывается для следующей строки
+    public void streamTable(ExportTable table, Consumer<Object[]> action) {
+        String sqlQuery = "select " + String.join(", ", table.getColumns()) + " from " + table.getTableName() +
+                " order by " + table.getOrderBy() + ";";
+        Object[] values = new Object[table.getColumns().size()];
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlQuery,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, (RowCallbackHandler) rs -> {
+            for (int i = 0; i < values.length; i++) {
+                Object value = rs.getObject(i + 1);
+                values[i] = value instanceof Date date ? date.toLocalDate() : value;
+            }
+            action.accept(values);
+        });
+    }
+}
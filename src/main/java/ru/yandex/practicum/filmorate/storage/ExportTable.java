@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+// таблицы, которые можно выгрузить целиком, и их столбцы в порядке вывода.
+// Имена таблиц и столбцов подставляются в запрос только отсюда, не из запроса клиента.
+// Выгрузка доступна без авторизации, поэтому email и дата рождения пользователей в неё не попадают
+@Getter
+public enum ExportTable {
+    FILMS("film_id", List.of("film_id", "film_name", "description", "release_date", "duration", "rating_id")),
+    FILM_GENRE("film_id, genre_id", List.of("film_id", "genre_id")),
+    LIKES("film_id, user_id", List.of("film_id", "user_id")),
+    USERS("user_id", List.of("user_id", "user_login", "user_name")),
+    FRIENDSHIP("user_id, friend_id", List.of("user_id", "friend_id"));
+
+    // порядок строк — по первичному ключу, чтобы повторные выгрузки можно было сравнивать
+    private final String orderBy;
+    private final List<String> columns;
+
+    ExportTable(String orderBy, List<String> columns) {
+        this.orderBy = orderBy;
+        this.columns = columns;
+    }
+
+    public String getTableName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Optional<ExportTable> of(String tableName) {
+        for (ExportTable table : values()) {
+            if (table.getTableName().equalsIgnoreCase(tableName)) {
+                return Optional.of(table);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -1,44 +1,105 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
-import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.storage.mappers.FilmRowMapper;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
-@Primary
 @Repository
 @RequiredArgsConstructor
+@Timed(value = "filmorate.storage", histogram = true)
 public class FilmDbStorage implements FilmStorage {
+    private static final int STREAM_FETCH_SIZE = 500;
 
     private final JdbcTemplate jdbcTemplate;
     private final FilmRowMapper filmRowMapper;
-    private final GenreDbStorage genreDbStorage;
+    // буфер отложенной записи лайков, есть только при filmorate.likes.write-behind.enabled=true
+    private final Optional<LikeWriteBuffer> likeWriteBuffer;
+    private final FilmRankings rankings = new FilmRankings();
+    private final FilmSimilarityIndex similarityIndex = new FilmSimilarityIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final EntityVersions versions = new EntityVersions();
 
+    // строит все индексы в памяти по базе при старте приложения
+    @PostConstruct
+    public void rebuildIndexes() {
+        rebuildLeaderboard();
+        rebuildSimilarityIndex();
+        rebuildSearchIndex();
+    }
+
+    // строит рейтинги популярности (общий, по жанрам и по годам) по таблицам лайков и жанров,
+    // включая фильмы без лайков
+    public void rebuildLeaderboard() {
+        String sqlQuery = "select f.film_id, extract(year from f.release_date), count(l.user_id) from films as f " +
+                "left join likes as l on l.film_id = f.film_id group by f.film_id, f.release_date;";
+        Map<Long, Long> likesCountByFilm = new HashMap<>();
+        Map<Long, Integer> yearByFilm = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> {
+            long filmId = rs.getLong(1);
+            int year = rs.getInt(2);
+            if (!rs.wasNull()) {
+                yearByFilm.put(filmId, year);
+            }
+            likesCountByFilm.put(filmId, rs.getLong(3));
+        });
+
+        Map<Long, List<Integer>> genreIdsByFilm = new HashMap<>();
+        jdbcTemplate.query("select film_id, genre_id from film_genre;", (RowCallbackHandler) rs ->
+                genreIdsByFilm.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getInt(2)));
+        rankings.rebuild(likesCountByFilm, yearByFilm, genreIdsByFilm);
+    }
+
+    // пересчитывает индекс похожих фильмов по всей таблице лайков
+    public void rebuildSimilarityIndex() {
+        Map<Long, List<Long>> filmsByUser = new HashMap<>();
+        jdbcTemplate.query("select user_id, film_id from likes;", (RowCallbackHandler) rs ->
+                filmsByUser.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getLong(2)));
+
+        Map<Long, long[]> likedFilmsByUser = new HashMap<>();
+        filmsByUser.forEach((userId, films) ->
+                likedFilmsByUser.put(userId, films.stream().mapToLong(Long::longValue).toArray()));
+        similarityIndex.rebuild(likedFilmsByUser);
+    }
+
+    // строит поисковый индекс по названиям и описаниям всех фильмов
+    public void rebuildSearchIndex() {
+        searchIndex.clear();
+        jdbcTemplate.query("select film_id, film_name, description from films;", (RowCallbackHandler) rs ->
+                searchIndex.put(rs.getLong(1), rs.getString(2), rs.getString(3)));
+    }
 
     @Override
     public Collection<Film> getAllFilms() {
-        String sqlQuery = "select film_id, film_name, description, release_Date, duration, rating_id " +
-                "from films;";
-        return jdbcTemplate.query(sqlQuery, filmRowMapper);
+        String sqlQuery = FilmRowMapper.FILM_SELECT + ";";
+        return jdbcTemplate.query(sqlQuery, this::mapFilm);
     }
 
     @Override
     public Optional<Film> getFilmById(Long id) {
-        String sqlQuery = "select film_id, film_name, description, release_Date, duration, rating_id " +
-                "from films where film_id = ?;";
+        String sqlQuery = FilmRowMapper.FILM_SELECT + "where f.film_id = ?;";
         try {
-            Film film = jdbcTemplate.queryForObject(sqlQuery, filmRowMapper, id);
+            Film film = jdbcTemplate.queryForObject(sqlQuery, this::mapFilm, id);
             return Optional.ofNullable(film);
         } catch (EmptyResultDataAccessException ignored) {
             return Optional.empty();
@@ -46,6 +107,19 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    public boolean existsById(Long id) {
+        String sqlQuery = "select exists(select 1 from films where film_id = ?);";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, id));
+    }
+
+    // номер версии фильма для ETag, увеличивается при обновлении и изменении лайков
+    @Override
+    public long getVersion(Long id) {
+        return versions.get(id);
+    }
+
+    @Override
+    @Transactional
     public Film create(Film newFilm) {
         String sqlQuery = "insert into films(film_name, description, release_Date, duration, rating_id) " +
                 "values (?, ?, ?, ?, ?);";
@@ -58,22 +132,87 @@ public class FilmDbStorage implements FilmStorage {
             stmt.setString(3, newFilm.getReleaseDate().toString());
             stmt.setInt(4, newFilm.getDuration());
 
+            // фильм без рейтинга хранится с пустым rating_id, 0 нарушил бы внешний ключ
             Rating mpa = newFilm.getMpa();
             if (mpa != null) {
                 stmt.setInt(5, mpa.getId());
             } else {
-                stmt.setInt(5, 0);
+                stmt.setNull(5, Types.INTEGER);
             }
 
             return stmt;
         }, keyHolder);
         newFilm.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
-        addGenresInFilm(newFilm.getGenres(), newFilm.getId());
+        syncGenresOfFilm(newFilm.getId(), newFilm.getGenres(), true);
+        // рейтинги и поисковый индекс в памяти меняются только после фиксации транзакции,
+        // чтобы откат не оставил в них фильм
+        AfterCommit.run(() -> {
+            rankings.addFilm(newFilm.getId(), newFilm.getReleaseDate().getYear(), genreIdsOf(newFilm));
+            searchIndex.put(newFilm.getId(), newFilm.getName(), newFilm.getDescription());
+        });
 
         return newFilm;
     }
 
+    // пакетная вставка одной транзакцией: фильмы и их жанры пишутся двумя пакетами запросов,
+    // индексы в памяти обновляются только после фиксации, поэтому откат пакета их не затрагивает
     @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        String sqlQuery = "insert into films(film_name, description, release_Date, duration, rating_id) " +
+                "values (?, ?, ?, ?, ?);";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(sqlQuery, new String[]{"film_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        Film film = films.get(i);
+                        stmt.setString(1, film.getName());
+                        stmt.setString(2, film.getDescription());
+                        stmt.setString(3, film.getReleaseDate().toString());
+                        stmt.setInt(4, film.getDuration());
+                        // фильм без рейтинга хранится с пустым rating_id, 0 нарушил бы внешний ключ
+                        if (film.getMpa() != null) {
+                            stmt.setInt(5, film.getMpa().getId());
+                        } else {
+                            stmt.setNull(5, Types.INTEGER);
+                        }
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+
+        List<Object[]> genreRows = new ArrayList<>();
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            for (Integer genreId : new LinkedHashSet<>(genreIdsOf(film))) {
+                genreRows.add(new Object[]{film.getId(), genreId});
+            }
+        }
+        if (!genreRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into film_genre(film_id, genre_id) values (?, ?);", genreRows);
+        }
+
+        AfterCommit.run(() -> {
+            for (Film film : films) {
+                rankings.addFilm(film.getId(), film.getReleaseDate().getYear(), genreIdsOf(film));
+                searchIndex.put(film.getId(), film.getName(), film.getDescription());
+            }
+        });
+        return films;
+    }
+
+    @Override
+    @Transactional
     public Film update(Film newFilm) {
         String sqlQuery = "UPDATE films SET " +
                 "film_name = ?, description = ?, release_Date = ?, duration = ?, rating_id = ? " +
@@ -84,7 +223,7 @@ public class FilmDbStorage implements FilmStorage {
         if (mpa != null) {
             ratingId = mpa.getId();
         } else {
-            ratingId = 0;
+            ratingId = null;
         }
 
         jdbcTemplate.update(sqlQuery,
@@ -95,58 +234,239 @@ public class FilmDbStorage implements FilmStorage {
                 ratingId,
                 newFilm.getId());
 
-        addGenresInFilm(newFilm.getGenres(), newFilm.getId());
+        syncGenresOfFilm(newFilm.getId(), newFilm.getGenres(), false);
+        AfterCommit.run(() -> {
+            rankings.updateFilm(newFilm.getId(), newFilm.getReleaseDate().getYear(), genreIdsOf(newFilm));
+            searchIndex.put(newFilm.getId(), newFilm.getName(), newFilm.getDescription());
+        });
         filmRowMapper.setLikesOfFilm(newFilm);
+        likeWriteBuffer.ifPresent(buffer -> buffer.applyPending(newFilm));
+        versions.bump(newFilm.getId());
         return newFilm;
     }
 
-    public Film addUserLike(Long id, Long userId) {
+    // первичный ключ (film_id, user_id) делает вставку атомарной проверкой «лайка ещё нет»:
+    // повторный лайк отклоняется базой без предварительного чтения фильма
+    @Override
+    public boolean addUserLike(Long id, Long userId) {
+        if (likeWriteBuffer.isPresent()) {
+            if (!likeWriteBuffer.get().like(id, userId, () -> likeExists(id, userId))) {
+                return false;
+            }
+            changeLikeIndexes(id, userId, true);
+            versions.bump(id);
+            return true;
+        }
+
         String sqlQuery = "insert into likes(film_id, user_id) values (?, ?);";
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
-            PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"film_id"});
-            stmt.setLong(1, id);
-            stmt.setLong(2, userId);
+        try {
+            jdbcTemplate.update(sqlQuery, id, userId);
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+        changeLikeIndexes(id, userId, true);
+        versions.bump(id);
+        return true;
+    }
 
-            return stmt;
-        }, keyHolder);
+    // рейтинг и индекс похожих фильмов меняются после фиксации транзакции, если лайк ставится внутри неё
+    private void changeLikeIndexes(long id, long userId, boolean liked) {
+        AfterCommit.run(() -> {
+            rankings.changeLikes(id, liked ? 1 : -1);
+            if (liked) {
+                similarityIndex.addLike(id, userId);
+            } else {
+                similarityIndex.removeLike(id, userId);
+            }
+        });
+    }
 
-        Film film = getFilmById(id).orElseThrow();
-        filmRowMapper.setLikesOfFilm(film);
+    // пакетная вставка лайков одной транзакцией. Строка вставляется, только если фильм и пользователь
+    // существуют и лайка ещё нет, поэтому результат по каждой паре берётся из числа вставленных строк,
+    // без чтения фильмов и пользователей перед записью
+    @Override
+    @Transactional
+    public boolean[] addUserLikes(List<long[]> likes) {
+        // лайки из буфера отложенной записи должны попасть в базу раньше пакета
+        likeWriteBuffer.ifPresent(LikeWriteBuffer::flush);
 
-        return film;
+        String sqlQuery = "insert into likes(film_id, user_id) " +
+                "select f.film_id, u.user_id from films as f join users as u on u.user_id = ? " +
+                "where f.film_id = ? " +
+                "and not exists(select 1 from likes as l where l.film_id = f.film_id and l.user_id = u.user_id);";
+        int[] inserted = jdbcTemplate.batchUpdate(sqlQuery, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                stmt.setLong(1, likes.get(i)[1]);
+                stmt.setLong(2, likes.get(i)[0]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return likes.size();
+            }
+        });
+
+        boolean[] added = new boolean[likes.size()];
+        for (int i = 0; i < likes.size(); i++) {
+            if (inserted[i] > 0) {
+                versions.bump(likes.get(i)[0]);
+                added[i] = true;
+            }
+        }
+        // рейтинги и индекс похожести меняются только после фиксации, как и при одиночном лайке
+        AfterCommit.run(() -> {
+            for (int i = 0; i < likes.size(); i++) {
+                if (added[i]) {
+                    rankings.changeLikes(likes.get(i)[0], 1);
+                    similarityIndex.addLike(likes.get(i)[0], likes.get(i)[1]);
+                }
+            }
+        });
+        return added;
     }
 
-    public void deleteUserLike(Long id, Long userId) {
+    @Override
+    public boolean deleteUserLike(Long id, Long userId) {
+        if (likeWriteBuffer.isPresent()) {
+            if (!likeWriteBuffer.get().unlike(id, userId, () -> likeExists(id, userId))) {
+                return false;
+            }
+            changeLikeIndexes(id, userId, false);
+            versions.bump(id);
+            return true;
+        }
+
         String sqlQuery = "DELETE FROM LIKES WHERE  FILM_ID =? AND USER_ID=?;";
-        jdbcTemplate.update(sqlQuery, id, userId);
+        int deleted = jdbcTemplate.update(sqlQuery, id, userId);
+        if (deleted > 0) {
+            changeLikeIndexes(id, userId, false);
+            versions.bump(id);
+        }
+        return deleted > 0;
+    }
+
+    // число лайков берётся из рейтинга популярности, без подсчёта строк таблицы лайков
+    @Override
+    public long getLikesCount(Long id) {
+        return rankings.getLikes(id);
+    }
+
+    // первые count фильмов берутся из рейтинга популярности (общего, жанра или года),
+    // без группировки таблицы лайков
+    @Override
+    public List<Film> findBestFilm(Long count, Integer genreId, Integer year) {
+        return getFilmsByIds(rankings.top(count, genreId, year));
     }
 
-    public List<Film> findBestFilm(Long count) {
-        String sqlQuery = "select films.film_id, films.film_name, films.description, films.release_Date, films.duration, films.rating_id " +
-                "from films join likes on  likes.film_id = films.film_id " +
-                " group by likes.film_id order by count (likes.user_id) desc limit ?;";
-        return jdbcTemplate.query(sqlQuery, filmRowMapper, count);
+    // фильмы, которые чаще всего лайкали вместе с фильмом id, по убыванию похожести
+    @Override
+    public List<Film> findSimilarFilms(Long id, int count) {
+        return getFilmsByIds(similarityIndex.similar(id, count));
     }
 
-    private void addGenresInFilm(List<Genre> genres, Long filmId) {
+    // фильмы, похожие на лайкнутые пользователем и ещё не лайкнутые им
+    @Override
+    public List<Film> findRecommendedFilms(Long userId, int count) {
+        return getFilmsByIds(similarityIndex.recommend(userId, count));
+    }
+
+    // фильмы, найденные по словам названия и описания, по убыванию оценки; строки читаются одним запросом
+    @Override
+    public List<Film> searchFilms(String query, int count) {
+        return getFilmsByIds(searchIndex.search(query, count));
+    }
+
+    // загружает фильмы одним запросом и возвращает их в порядке переданных id
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        String sqlQuery = FilmRowMapper.FILM_SELECT + "where f.film_id in (" + placeholders + ");";
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : jdbcTemplate.query(sqlQuery, this::mapFilm, ids.toArray())) {
+            filmsById.put(film.getId(), film);
+        }
+
+        return ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // приводит жанры фильма к переданному списку: читает текущие записи FILM_GENRE одним запросом
+    // и пакетами удаляет лишние и добавляет недостающие. Жанры проверяются по справочнику в сервисе
+    // до записи, целостность дополнительно защищена внешним ключом
+    private void syncGenresOfFilm(Long filmId, List<Genre> genres, boolean newFilm) {
+        Set<Integer> newGenreIds = new LinkedHashSet<>();
         for (Genre genre : genres) {
-            Integer genreId = genre.getId();
-            genreDbStorage.getGenreById(genreId)
-                    .orElseThrow(() -> new NotFoundException("Жанр с Id " + genreId + " не найден"));
+            newGenreIds.add(genre.getId());
+        }
 
-            String sqlQuery = "insert into film_genre(film_id, genre_id) " +
-                    "values (?, ?);";
-            KeyHolder keyHolder = new GeneratedKeyHolder();
-            jdbcTemplate.update(connection -> {
-                PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"film_id"});
+        Set<Integer> oldGenreIds = new HashSet<>();
+        if (!newFilm) {
+            String sqlQuery = "select genre_id from film_genre where film_id = ?;";
+            oldGenreIds.addAll(jdbcTemplate.queryForList(sqlQuery, Integer.class, filmId));
+        }
 
-                stmt.setLong(1, filmId);
-                stmt.setInt(2, genreId);
+        List<Object[]> deletedRows = new ArrayList<>();
+        for (Integer genreId : oldGenreIds) {
+            if (!newGenreIds.contains(genreId)) {
+                deletedRows.add(new Object[]{filmId, genreId});
+            }
+        }
 
-                return stmt;
-            }, keyHolder);
+        List<Object[]> insertedRows = new ArrayList<>();
+        for (Integer genreId : newGenreIds) {
+            if (!oldGenreIds.contains(genreId)) {
+                insertedRows.add(new Object[]{filmId, genreId});
+            }
+        }
+
+        if (!deletedRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("delete from film_genre where film_id = ? and genre_id = ?;", deletedRows);
         }
+        if (!insertedRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into film_genre(film_id, genre_id) values (?, ?);", insertedRows);
+        }
+    }
+
+    // keyset-пагинация: не более limit фильмов с id больше afterId
+    @Override
+    public List<Film> getFilmsPage(Long afterId, int limit) {
+        String sqlQuery = FilmRowMapper.FILM_SELECT + "where f.film_id > ? order by f.film_id limit ?;";
+        return jdbcTemplate.query(sqlQuery, this::mapFilm, afterId, limit);
+    }
+
+    // передаёт фильмы в action по мере чтения из ResultSet, не собирая их в коллекцию
+    @Override
+    public void streamAllFilms(Consumer<Film> action) {
+        String sqlQuery = FilmRowMapper.FILM_SELECT + "order by f.film_id;";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlQuery,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, (RowCallbackHandler) rs -> action.accept(mapFilm(rs, rs.getRow())));
+    }
+
+    private static List<Integer> genreIdsOf(Film film) {
+        return film.getGenres().stream().map(Genre::getId).toList();
+    }
+
+    private boolean likeExists(Long id, Long userId) {
+        String sqlQuery = "select exists(select 1 from likes where film_id = ? and user_id = ?);";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, id, userId));
+    }
+
+    // строка фильма с учётом ещё не записанных в базу лайков
+    private Film mapFilm(ResultSet rs, int rowNum) throws SQLException {
+        Film film = filmRowMapper.mapRow(rs, rowNum);
+        likeWriteBuffer.ifPresent(buffer -> buffer.applyPending(film));
+        return film;
     }
 
     public void insertFilmData(String name, String description, String date, Integer duration) {
@@ -163,5 +483,8 @@ public class FilmDbStorage implements FilmStorage {
 
             return stmt;
         }, keyHolder);
+        long filmId = Objects.requireNonNull(keyHolder.getKey()).longValue();
+        rankings.addFilm(filmId, LocalDate.parse(date).getYear(), List.of());
+        searchIndex.put(filmId, name, description);
     }
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+// рейтинг популярности фильмов: число лайков каждого фильма и упорядоченный по нему индекс.
+// Обновляется точечно при добавлении фильма и лайков, поэтому первые count фильмов
+// выдаются за O(count) без пересчёта лайков. Фильмы без лайков тоже участвуют в рейтинге
+public class FilmLeaderboard {
+    // больше лайков — выше, при равенстве выше фильм с меньшим id
+    private static final Comparator<FilmLikes> RANKING_ORDER = Comparator
+            .comparingLong(FilmLikes::likes).reversed()
+            .thenComparingLong(FilmLikes::filmId);
+
+    private final Map<Long, FilmLikes> likesByFilm = new HashMap<>();
+    private final NavigableSet<FilmLikes> ranking = new TreeSet<>(RANKING_ORDER);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // регистрирует фильм без лайков, если его ещё нет в рейтинге
+    public void addFilm(long filmId) {
+        addFilm(filmId, 0);
+    }
+
+    // регистрирует фильм с заданным числом лайков, если его ещё нет в рейтинге
+    public void addFilm(long filmId, long likes) {
+        lock.writeLock().lock();
+        try {
+            if (!likesByFilm.containsKey(filmId)) {
+                put(new FilmLikes(filmId, likes));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            FilmLikes current = likesByFilm.remove(filmId);
+            if (current != null) {
+                ranking.remove(current);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // изменяет число лайков фильма на delta
+    public void changeLikes(long filmId, long delta) {
+        if (delta == 0) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            FilmLikes current = likesByFilm.get(filmId);
+            long likes = current == null ? 0 : current.likes();
+            if (current != null) {
+                ranking.remove(current);
+            }
+            put(new FilmLikes(filmId, Math.max(0, likes + delta)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getLikes(long filmId) {
+        lock.readLock().lock();
+        try {
+            FilmLikes current = likesByFilm.get(filmId);
+            return current == null ? 0 : current.likes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return likesByFilm.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // id первых count фильмов по количеству лайков
+    public List<Long> top(long count) {
+        return top(count, filmId -> true);
+    }
+
+    // id первых count фильмов по количеству лайков среди удовлетворяющих filter
+    public List<Long> top(long count, LongPredicate filter) {
+        lock.readLock().lock();
+        try {
+            List<Long> filmIds = new ArrayList<>((int) Math.min(Math.max(count, 0), ranking.size()));
+            Iterator<FilmLikes> iterator = ranking.iterator();
+            while (filmIds.size() < count && iterator.hasNext()) {
+                long filmId = iterator.next().filmId();
+                if (filter.test(filmId)) {
+                    filmIds.add(filmId);
+                }
+            }
+            return filmIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // полностью заменяет содержимое рейтинга, например при старте приложения
+    public void rebuild(Map<Long, Long> likesCountByFilm) {
+        lock.writeLock().lock();
+        try {
+            likesByFilm.clear();
+            ranking.clear();
+            likesCountByFilm.forEach((filmId, likes) -> put(new FilmLikes(filmId, likes)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(FilmLikes filmLikes) {
+        likesByFilm.put(filmLikes.filmId(), filmLikes);
+        ranking.add(filmLikes);
+    }
+
+    private record FilmLikes(long filmId, long likes) {
+    }
+}
@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+// рейтинги популярности фильмов: общий и отдельные для каждого жанра и года выпуска.
+// Фильм входит в общий рейтинг, в рейтинг своего года и в рейтинги всех своих жанров с одним и тем же
+// числом лайков; изменение лайков и обновление фильма меняют только затронутые рейтинги.
+// Изменения выполняются под монитором объекта, чтение идёт по рейтингам без общей блокировки
+public class FilmRankings {
+    private static final int[] NO_GENRES = new int[0];
+
+    private final FilmLeaderboard overall = new FilmLeaderboard();
+    private final ConcurrentMap<Integer, FilmLeaderboard> byGenre = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, FilmLeaderboard> byYear = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, FilmKeys> keysByFilm = new ConcurrentHashMap<>();
+
+    // регистрирует фильм без лайков, если его ещё нет в рейтингах; year может быть null
+    public synchronized void addFilm(long filmId, Integer year, Collection<Integer> genreIds) {
+        if (keysByFilm.containsKey(filmId)) {
+            return;
+        }
+        FilmKeys keys = new FilmKeys(year, toSortedArray(genreIds));
+        keysByFilm.put(filmId, keys);
+        overall.addFilm(filmId);
+        forEachLeaderboard(keys, leaderboard -> leaderboard.addFilm(filmId));
+    }
+
+    // переносит фильм в рейтинги нового года и жанров, сохраняя число лайков
+    public synchronized void updateFilm(long filmId, Integer year, Collection<Integer> genreIds) {
+        FilmKeys oldKeys = keysByFilm.get(filmId);
+        if (oldKeys == null) {
+            addFilm(filmId, year, genreIds);
+            return;
+        }
+
+        FilmKeys newKeys = new FilmKeys(year, toSortedArray(genreIds));
+        long likes = overall.getLikes(filmId);
+        forEachLeaderboard(oldKeys, leaderboard -> leaderboard.removeFilm(filmId));
+        keysByFilm.put(filmId, newKeys);
+        forEachLeaderboard(newKeys, leaderboard -> leaderboard.addFilm(filmId, likes));
+    }
+
+    // изменяет число лайков фильма на delta во всех его рейтингах
+    public synchronized void changeLikes(long filmId, long delta) {
+        overall.changeLikes(filmId, delta);
+        FilmKeys keys = keysByFilm.get(filmId);
+        if (keys != null) {
+            forEachLeaderboard(keys, leaderboard -> leaderboard.changeLikes(filmId, delta));
+        }
+    }
+
+    public long getLikes(long filmId) {
+        return overall.getLikes(filmId);
+    }
+
+    // id первых count фильмов по количеству лайков с заданным жанром и/или годом (null — без фильтра).
+    // Если заданы оба фильтра, обходится меньший из двух рейтингов с проверкой второго условия
+    public List<Long> top(long count, Integer genreId, Integer year) {
+        if (genreId == null && year == null) {
+            return overall.top(count);
+        }
+
+        FilmLeaderboard genreLeaderboard = genreId == null ? null : byGenre.get(genreId);
+        FilmLeaderboard yearLeaderboard = year == null ? null : byYear.get(year);
+        if ((genreId != null && genreLeaderboard == null) || (year != null && yearLeaderboard == null)) {
+            return List.of();
+        }
+        if (genreLeaderboard == null) {
+            return yearLeaderboard.top(count);
+        }
+        if (yearLeaderboard == null) {
+            return genreLeaderboard.top(count);
+        }
+
+        if (genreLeaderboard.size() <= yearLeaderboard.size()) {
+            return genreLeaderboard.top(count, filmId -> year.equals(keysOf(filmId).year()));
+        }
+        return yearLeaderboard.top(count, filmId -> Arrays.binarySearch(keysOf(filmId).genreIds(), genreId) >= 0);
+    }
+
+    // полностью заменяет содержимое рейтингов, например при старте приложения
+    public synchronized void rebuild(Map<Long, Long> likesCountByFilm, Map<Long, Integer> yearByFilm,
+                                     Map<Long, List<Integer>> genreIdsByFilm) {
+        overall.rebuild(likesCountByFilm);
+        byGenre.clear();
+        byYear.clear();
+        keysByFilm.clear();
+
+        Map<Integer, Map<Long, Long>> likesByGenre = new HashMap<>();
+        Map<Integer, Map<Long, Long>> likesByYear = new HashMap<>();
+        likesCountByFilm.forEach((filmId, likes) -> {
+            FilmKeys keys = new FilmKeys(yearByFilm.get(filmId),
+                    toSortedArray(genreIdsByFilm.getOrDefault(filmId, List.of())));
+            keysByFilm.put(filmId, keys);
+            if (keys.year() != null) {
+                likesByYear.computeIfAbsent(keys.year(), year -> new HashMap<>()).put(filmId, likes);
+            }
+            for (int genreId : keys.genreIds()) {
+                likesByGenre.computeIfAbsent(genreId, id -> new HashMap<>()).put(filmId, likes);
+            }
+        });
+
+        likesByGenre.forEach((genreId, likes) -> leaderboardOf(byGenre, genreId).rebuild(likes));
+        likesByYear.forEach((year, likes) -> leaderboardOf(byYear, year).rebuild(likes));
+    }
+
+    private void forEachLeaderboard(FilmKeys keys, Consumer<FilmLeaderboard> action) {
+        if (keys.year() != null) {
+            action.accept(leaderboardOf(byYear, keys.year()));
+        }
+        for (int genreId : keys.genreIds()) {
+            action.accept(leaderboardOf(byGenre, genreId));
+        }
+    }
+
+    private FilmKeys keysOf(long filmId) {
+        return keysByFilm.getOrDefault(filmId, new FilmKeys(null, NO_GENRES));
+    }
+
+    private static FilmLeaderboard leaderboardOf(ConcurrentMap<Integer, FilmLeaderboard> leaderboards, int key) {
+        return leaderboards.computeIfAbsent(key, k -> new FilmLeaderboard());
+    }
+
+    private static int[] toSortedArray(Collection<Integer> values) {
+        if (values == null || values.isEmpty()) {
+            return NO_GENRES;
+        }
+        return values.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    // год выпуска и отсортированные id жанров фильма — ключи его рейтингов
+    private record FilmKeys(Integer year, int[] genreIds) {
+    }
+}
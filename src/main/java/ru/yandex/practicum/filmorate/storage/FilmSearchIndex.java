@@ -0,0 +1,211 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// инвертированный индекс для поиска фильмов по названию и описанию.
+// Текст приводится к нижнему регистру (NFKC, «ё» → «е») и делится на слова из букв и цифр,
+// у слов отбрасываются типичные окончания русского и английского языка, поэтому «матрицы»
+// находит «Матрица», а «movies» — «Movie». Для каждого слова хранится отсортированный список id фильмов
+// с весом: слово в названии весит NAME_WEIGHT, в описании — 1.
+// В запросе должны встретиться все слова, последнее слово ищется и как префикс (поиск по мере ввода).
+// Оценка фильма — сумма весов слов, умноженных на idf, при равной оценке выше фильм с меньшим id
+public class FilmSearchIndex {
+    private static final int NAME_WEIGHT = 3;
+    private static final int MIN_STEM_LENGTH = 3;
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями", "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими", "ией", "иям", "иях",
+            "ой", "ей", "ий", "ый", "ая", "яя", "ое", "ее", "ые", "ие", "ов", "ев", "ах", "ях", "ам", "ям",
+            "ом", "ем", "ую", "юю", "ия", "ию", "ии", "ью", "ь", "а", "я", "о", "е", "ы", "и", "у", "ю"};
+    private static final String[] ENGLISH_ENDINGS = {"ing", "ed", "s"};
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Postings> postingsByTerm = new TreeMap<>();
+    // веса слов каждого фильма, чтобы при обновлении удалить его из списков старых слов
+    private final Map<Long, Map<String, Integer>> termsByFilm = new HashMap<>();
+
+    // добавляет фильм в индекс или заменяет его слова при обновлении
+    public void put(long filmId, String name, String description) {
+        Map<String, Integer> terms = new HashMap<>();
+        for (String term : terms(name)) {
+            terms.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : terms(description)) {
+            terms.merge(term, 1, Integer::sum);
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeTerms(filmId);
+            terms.forEach((term, weight) ->
+                    postingsByTerm.computeIfAbsent(term, t -> new Postings()).put(filmId, weight));
+            termsByFilm.put(filmId, terms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // id не более limit фильмов, подходящих под запрос, по убыванию оценки
+    public List<Long> search(String query, int limit) {
+        List<String> queryTerms = terms(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = null;
+            for (int i = 0; i < queryTerms.size(); i++) {
+                boolean prefix = i == queryTerms.size() - 1;
+                Map<Long, Double> termScores = scoreTerm(queryTerms.get(i), prefix);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    // все слова запроса должны встретиться: оставляем только фильмы, найденные по каждому
+                    Map<Long, Double> previous = scores;
+                    scores = new HashMap<>();
+                    for (Map.Entry<Long, Double> entry : termScores.entrySet()) {
+                        Double score = previous.get(entry.getKey());
+                        if (score != null) {
+                            scores.put(entry.getKey(), score + entry.getValue());
+                        }
+                    }
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postingsByTerm.clear();
+            termsByFilm.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // оценки фильмов по одному слову запроса; для префикса учитываются все слова индекса, начинающиеся с него,
+    // а из нескольких совпавших слов одного фильма берётся лучшее
+    private Map<Long, Double> scoreTerm(String term, boolean prefix) {
+        Map<Long, Double> scores = new HashMap<>();
+        Collection<Postings> matched;
+        if (prefix) {
+            matched = postingsByTerm.subMap(term, true, term + Character.MAX_VALUE, false).values();
+        } else {
+            Postings postings = postingsByTerm.get(term);
+            matched = postings == null ? List.of() : List.of(postings);
+        }
+
+        double films = Math.max(termsByFilm.size(), 1);
+        for (Postings postings : matched) {
+            double idf = Math.log(1 + films / postings.size);
+            for (int i = 0; i < postings.size; i++) {
+                scores.merge(postings.filmIds[i], postings.weights[i] * idf, Math::max);
+            }
+        }
+        return scores;
+    }
+
+    private void removeTerms(long filmId) {
+        Map<String, Integer> oldTerms = termsByFilm.get(filmId);
+        if (oldTerms == null) {
+            return;
+        }
+        for (String term : oldTerms.keySet()) {
+            Postings postings = postingsByTerm.get(term);
+            postings.remove(filmId);
+            if (postings.size == 0) {
+                postingsByTerm.remove(term);
+            }
+        }
+    }
+
+    // нормализованные слова текста с отброшенными окончаниями
+    private static List<String> terms(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT)
+                .replace('ё', 'е');
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                terms.add(stem(normalized.substring(start, i)));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static String stem(String word) {
+        String[] endings = isCyrillic(word) ? RUSSIAN_ENDINGS : ENGLISH_ENDINGS;
+        for (String ending : endings) {
+            boolean longEnough = word.length() - ending.length() >= MIN_STEM_LENGTH;
+            if (word.endsWith(ending) && longEnough && !word.endsWith("ss")) {
+                return word.substring(0, word.length() - ending.length());
+            }
+        }
+        return word;
+    }
+
+    private static boolean isCyrillic(String word) {
+        return Character.UnicodeScript.of(word.codePointAt(0)) == Character.UnicodeScript.CYRILLIC;
+    }
+
+    // отсортированные id фильмов слова и веса, массивы растут по мере добавления
+    private static final class Postings {
+        private long[] filmIds = new long[4];
+        private int[] weights = new int[4];
+        private int size;
+
+        private void put(long filmId, int weight) {
+            int index = Arrays.binarySearch(filmIds, 0, size, filmId);
+            if (index >= 0) {
+                weights[index] = weight;
+                return;
+            }
+
+            if (size == filmIds.length) {
+                filmIds = Arrays.copyOf(filmIds, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            int insertion = -index - 1;
+            System.arraycopy(filmIds, insertion, filmIds, insertion + 1, size - insertion);
+            System.arraycopy(weights, insertion, weights, insertion + 1, size - insertion);
+            filmIds[insertion] = filmId;
+            weights[insertion] = weight;
+            size++;
+        }
+
+        private void remove(long filmId) {
+            int index = Arrays.binarySearch(filmIds, 0, size, filmId);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(filmIds, index + 1, filmIds, index, size - index - 1);
+            System.arraycopy(weights, index + 1, weights, index, size - index - 1);
+            size--;
+        }
+    }
+}
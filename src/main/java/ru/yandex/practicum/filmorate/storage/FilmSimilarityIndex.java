@@ -0,0 +1,295 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// рекомендации «пользователи, которым понравился этот фильм, лайкали и ...» по матрице лайков.
+// Для каждого фильма хранится разреженная строка совместной встречаемости: отсортированные id фильмов,
+// которые лайкали те же пользователи, и число таких пользователей (примитивные массивы).
+// Похожесть двух фильмов — косинусная мера: совместные лайки / sqrt(лайки первого * лайки второго).
+// Лайк и его удаление меняют строки только фильмов, лайкнутых этим пользователем;
+// полный пересчёт (при старте приложения) считает строки параллельно в ForkJoinPool
+public class FilmSimilarityIndex {
+    private static final long[] NO_IDS = new long[0];
+    private static final int[] NO_COUNTS = new int[0];
+    // число строк, которые пересчитывает одна задача fork/join без дальнейшего деления
+    private static final int ROWS_PER_TASK = 64;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // отсортированные id фильмов, лайкнутых пользователем, и пользователей, лайкнувших фильм
+    private Map<Long, long[]> filmsByUser = new HashMap<>();
+    private Map<Long, long[]> usersByFilm = new HashMap<>();
+    private Map<Long, Row> rows = new HashMap<>();
+
+    public void addLike(long filmId, long userId) {
+        lock.writeLock().lock();
+        try {
+            long[] films = filmsByUser.getOrDefault(userId, NO_IDS);
+            if (Arrays.binarySearch(films, filmId) >= 0) {
+                return;
+            }
+            for (long otherId : films) {
+                rows.computeIfAbsent(filmId, id -> new Row()).change(otherId, 1);
+                rows.computeIfAbsent(otherId, id -> new Row()).change(filmId, 1);
+            }
+            filmsByUser.put(userId, insert(films, filmId));
+            usersByFilm.put(filmId, insert(usersByFilm.getOrDefault(filmId, NO_IDS), userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(long filmId, long userId) {
+        lock.writeLock().lock();
+        try {
+            long[] films = filmsByUser.getOrDefault(userId, NO_IDS);
+            if (Arrays.binarySearch(films, filmId) < 0) {
+                return;
+            }
+            for (long otherId : films) {
+                if (otherId != filmId) {
+                    changeRow(filmId, otherId, -1);
+                    changeRow(otherId, filmId, -1);
+                }
+            }
+            filmsByUser.put(userId, remove(films, filmId));
+            usersByFilm.put(filmId, remove(usersByFilm.getOrDefault(filmId, NO_IDS), userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // id не более limit фильмов, самых похожих на filmId, по убыванию похожести
+    public List<Long> similar(long filmId, int limit) {
+        lock.readLock().lock();
+        try {
+            Row row = rows.get(filmId);
+            if (row == null || limit <= 0) {
+                return List.of();
+            }
+
+            TopIds top = new TopIds(limit);
+            double likes = usersByFilm.getOrDefault(filmId, NO_IDS).length;
+            for (int i = 0; i < row.size; i++) {
+                top.offer(row.filmIds[i], similarity(row.counts[i], likes, row.filmIds[i]));
+            }
+            return top.toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // id не более limit фильмов, которые пользователь ещё не лайкал, по убыванию суммарной похожести
+    // на его лайкнутые фильмы
+    public List<Long> recommend(long userId, int limit) {
+        lock.readLock().lock();
+        try {
+            long[] liked = filmsByUser.getOrDefault(userId, NO_IDS);
+            if (liked.length == 0 || limit <= 0) {
+                return List.of();
+            }
+
+            Map<Long, Double> scores = new HashMap<>();
+            for (long filmId : liked) {
+                Row row = rows.get(filmId);
+                if (row == null) {
+                    continue;
+                }
+                double likes = usersByFilm.getOrDefault(filmId, NO_IDS).length;
+                for (int i = 0; i < row.size; i++) {
+                    long candidateId = row.filmIds[i];
+                    if (Arrays.binarySearch(liked, candidateId) < 0) {
+                        scores.merge(candidateId, similarity(row.counts[i], likes, candidateId), Double::sum);
+                    }
+                }
+            }
+
+            TopIds top = new TopIds(limit);
+            scores.forEach(top::offer);
+            return top.toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // полностью пересчитывает индекс по лайкам пользователей. Лайки, поставленные во время пересчёта,
+    // в результат не попадут, поэтому пересчёт выполняется при старте приложения до приёма запросов
+    public void rebuild(Map<Long, long[]> likedFilmsByUser) {
+        Map<Long, long[]> newFilmsByUser = new HashMap<>();
+        Map<Long, List<Long>> usersOfFilm = new HashMap<>();
+        likedFilmsByUser.forEach((userId, films) -> {
+            long[] sorted = Arrays.stream(films).sorted().distinct().toArray();
+            newFilmsByUser.put(userId, sorted);
+            for (long filmId : sorted) {
+                usersOfFilm.computeIfAbsent(filmId, id -> new ArrayList<>()).add(userId);
+            }
+        });
+
+        // фильмам с лайками выдаются плотные номера по возрастанию id,
+        // чтобы строки считались в массивах-счётчиках без хеш-таблиц
+        long[] filmIds = usersOfFilm.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        long[][] usersByIndex = new long[filmIds.length][];
+        Map<Long, long[]> newUsersByFilm = new HashMap<>();
+        for (int i = 0; i < filmIds.length; i++) {
+            usersByIndex[i] = usersOfFilm.get(filmIds[i]).stream().mapToLong(Long::longValue).sorted().toArray();
+            newUsersByFilm.put(filmIds[i], usersByIndex[i]);
+        }
+        Map<Long, int[]> filmIndexesByUser = new HashMap<>();
+        newFilmsByUser.forEach((userId, films) -> filmIndexesByUser.put(userId,
+                Arrays.stream(films).mapToInt(filmId -> Arrays.binarySearch(filmIds, filmId)).toArray()));
+
+        Row[] rowsByIndex = new Row[filmIds.length];
+        ForkJoinPool.commonPool().invoke(
+                new RowsTask(filmIds, usersByIndex, filmIndexesByUser, rowsByIndex, 0, filmIds.length));
+
+        Map<Long, Row> newRows = new HashMap<>();
+        for (int i = 0; i < filmIds.length; i++) {
+            if (rowsByIndex[i].size > 0) {
+                newRows.put(filmIds[i], rowsByIndex[i]);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            filmsByUser = newFilmsByUser;
+            usersByFilm = newUsersByFilm;
+            rows = newRows;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private double similarity(int commonLikes, double likes, long otherFilmId) {
+        return commonLikes / Math.sqrt(likes * usersByFilm.getOrDefault(otherFilmId, NO_IDS).length);
+    }
+
+    private void changeRow(long filmId, long otherId, int delta) {
+        Row row = rows.get(filmId);
+        if (row != null) {
+            row.change(otherId, delta);
+            if (row.size == 0) {
+                rows.remove(filmId);
+            }
+        }
+    }
+
+    private static long[] insert(long[] array, long value) {
+        int insertion = -Arrays.binarySearch(array, value) - 1;
+        long[] updated = new long[array.length + 1];
+        System.arraycopy(array, 0, updated, 0, insertion);
+        updated[insertion] = value;
+        System.arraycopy(array, insertion, updated, insertion + 1, array.length - insertion);
+        return updated;
+    }
+
+    private static long[] remove(long[] array, long value) {
+        int index = Arrays.binarySearch(array, value);
+        long[] updated = new long[array.length - 1];
+        System.arraycopy(array, 0, updated, 0, index);
+        System.arraycopy(array, index + 1, updated, index, array.length - index - 1);
+        return updated;
+    }
+
+    // строка встречаемости: отсортированные id фильмов и счётчики, массивы растут по мере добавления
+    private static final class Row {
+        private long[] filmIds;
+        private int[] counts;
+        private int size;
+
+        private Row() {
+            this(NO_IDS, NO_COUNTS, 0);
+        }
+
+        private Row(long[] filmIds, int[] counts, int size) {
+            this.filmIds = filmIds;
+            this.counts = counts;
+            this.size = size;
+        }
+
+        private void change(long filmId, int delta) {
+            int index = Arrays.binarySearch(filmIds, 0, size, filmId);
+            if (index >= 0) {
+                counts[index] += delta;
+                if (counts[index] <= 0) {
+                    System.arraycopy(filmIds, index + 1, filmIds, index, size - index - 1);
+                    System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+                    size--;
+                }
+                return;
+            }
+            if (delta <= 0) {
+                return;
+            }
+
+            if (size == filmIds.length) {
+                int capacity = Math.max(4, size * 2);
+                filmIds = Arrays.copyOf(filmIds, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            int insertion = -index - 1;
+            System.arraycopy(filmIds, insertion, filmIds, insertion + 1, size - insertion);
+            System.arraycopy(counts, insertion, counts, insertion + 1, size - insertion);
+            filmIds[insertion] = filmId;
+            counts[insertion] = delta;
+            size++;
+        }
+    }
+
+    // пересчёт строк с номерами [from, to): диапазон делится пополам, пока не станет не больше ROWS_PER_TASK.
+    // Каждая листовая задача заводит один массив-счётчик на все фильмы и переиспользует его для своих строк
+    private static final class RowsTask extends RecursiveAction {
+        private final long[] filmIds;
+        private final long[][] usersByIndex;
+        private final Map<Long, int[]> filmIndexesByUser;
+        private final Row[] rowsByIndex;
+        private final int from;
+        private final int to;
+
+        private RowsTask(long[] filmIds, long[][] usersByIndex, Map<Long, int[]> filmIndexesByUser,
+                         Row[] rowsByIndex, int from, int to) {
+            this.filmIds = filmIds;
+            this.usersByIndex = usersByIndex;
+            this.filmIndexesByUser = filmIndexesByUser;
+            this.rowsByIndex = rowsByIndex;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowsTask(filmIds, usersByIndex, filmIndexesByUser, rowsByIndex, from, middle),
+                        new RowsTask(filmIds, usersByIndex, filmIndexesByUser, rowsByIndex, middle, to));
+                return;
+            }
+
+            int[] counts = new int[filmIds.length];
+            int[] touched = new int[filmIds.length];
+            for (int filmIndex = from; filmIndex < to; filmIndex++) {
+                int touchedCount = 0;
+                for (long userId : usersByIndex[filmIndex]) {
+                    for (int otherIndex : filmIndexesByUser.get(userId)) {
+                        if (otherIndex != filmIndex && counts[otherIndex]++ == 0) {
+                            touched[touchedCount++] = otherIndex;
+                        }
+                    }
+                }
+
+                // номера выданы по возрастанию id, поэтому сортировка номеров сортирует и id
+                Arrays.sort(touched, 0, touchedCount);
+                long[] rowFilmIds = new long[touchedCount];
+                int[] rowCounts = new int[touchedCount];
+                for (int i = 0; i < touchedCount; i++) {
+                    rowFilmIds[i] = filmIds[touched[i]];
+                    rowCounts[i] = counts[touched[i]];
+                    counts[touched[i]] = 0;
+                }
+                rowsByIndex[filmIndex] = new Row(rowFilmIds, rowCounts, touchedCount);
+            }
+        }
+    }
+}
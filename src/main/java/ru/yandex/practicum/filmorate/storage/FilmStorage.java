@@ -5,6 +5,7 @@ import ru.yandex.practicum.filmorate.model.Film;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
@@ -12,13 +13,41 @@ public interface FilmStorage {
 
     Optional<Film> getFilmById(Long id);
 
+    boolean existsById(Long id);
+
+    long getVersion(Long id);
+
     Film create(Film newFilm);
 
     Film update(Film newFilm);
 
-    Film addUserLike(Long id, Long userId);
+    // пакетная вставка, фильмам присваиваются id
+    List<Film> createAll(List<Film> films);
+
+    // true, если лайк добавлен, и false, если пользователь уже ставил лайк фильму
+    boolean addUserLike(Long id, Long userId);
+
+    // true, если лайк удалён, и false, если его не было
+    boolean deleteUserLike(Long id, Long userId);
+
+    // пакетная вставка лайков, пара — {id фильма, id пользователя}; true там, где лайк добавлен,
+    // false — если фильма или пользователя нет или лайк уже стоит
+    boolean[] addUserLikes(List<long[]> likes);
+
+    long getLikesCount(Long id);
+
+    // genreId и year — необязательные фильтры, null означает «без фильтра»
+    List<Film> findBestFilm(Long count, Integer genreId, Integer year);
+
+    List<Film> findSimilarFilms(Long id, int count);
+
+    List<Film> findRecommendedFilms(Long userId, int count);
+
+    List<Film> searchFilms(String query, int count);
+
+    List<Film> getFilmsByIds(List<Long> ids);
 
-    void deleteUserLike(Long id, Long userId);
+    List<Film> getFilmsPage(Long afterId, int limit);
 
-    List<Film> findBestFilm(Long count);
+    void streamAllFilms(Consumer<Film> action);
 }
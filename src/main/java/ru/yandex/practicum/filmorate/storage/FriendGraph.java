@@ -0,0 +1,196 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// граф дружбы: для каждого пользователя отсортированный массив id его друзей (направленные рёбра).
+// Массив после публикации не меняется — добавление и удаление друга заменяют его копией,
+// поэтому чтение идёт без блокировок, а общие друзья считаются слиянием двух массивов
+public class FriendGraph {
+    private static final long[] NO_FRIENDS = new long[0];
+
+    private final ConcurrentMap<Long, long[]> friendsByUser = new ConcurrentHashMap<>();
+
+    // добавляет friendId в друзья userId, возвращает false, если он уже был другом
+    public boolean addFriend(long userId, long friendId) {
+        boolean[] added = new boolean[1];
+        friendsByUser.compute(userId, (id, friends) -> {
+            long[] current = friends == null ? NO_FRIENDS : friends;
+            int index = Arrays.binarySearch(current, friendId);
+            if (index >= 0) {
+                return current;
+            }
+
+            int insertion = -index - 1;
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertion);
+            updated[insertion] = friendId;
+            System.arraycopy(current, insertion, updated, insertion + 1, current.length - insertion);
+            added[0] = true;
+            return updated;
+        });
+        return added[0];
+    }
+
+    // удаляет friendId из друзей userId, возвращает false, если его там не было
+    public boolean removeFriend(long userId, long friendId) {
+        boolean[] removed = new boolean[1];
+        friendsByUser.computeIfPresent(userId, (id, friends) -> {
+            int index = Arrays.binarySearch(friends, friendId);
+            if (index < 0) {
+                return friends;
+            }
+
+            long[] updated = new long[friends.length - 1];
+            System.arraycopy(friends, 0, updated, 0, index);
+            System.arraycopy(friends, index + 1, updated, index, friends.length - index - 1);
+            removed[0] = true;
+            return updated;
+        });
+        return removed[0];
+    }
+
+    public boolean isFriend(long userId, long friendId) {
+        return Arrays.binarySearch(friendsOf(userId), friendId) >= 0;
+    }
+
+    // отсортированные id друзей; массив общий для всех читателей и не должен изменяться
+    public long[] friendsOf(long userId) {
+        return friendsByUser.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    // не более limit id друзей, больших afterId, по возрастанию
+    public long[] friendsAfter(long userId, long afterId, int limit) {
+        // afterId + 1 ниже переполнился бы
+        if (afterId == Long.MAX_VALUE) {
+            return NO_FRIENDS;
+        }
+        long[] friends = friendsOf(userId);
+        int from = lowerBound(friends, 0, afterId + 1);
+        return Arrays.copyOfRange(friends, from, from + Math.min(limit, friends.length - from));
+    }
+
+    // отсортированные id общих друзей: первый проход считает размер результата, второй заполняет его,
+    // других выделений памяти нет. По большему массиву идём экспоненциальным поиском,
+    // поэтому при сильно разном числе друзей стоимость близка к O(m log(n / m))
+    public long[] commonFriends(long userId, long otherId) {
+        long[] friends = friendsOf(userId);
+        long[] otherFriends = friendsOf(otherId);
+        long[] small = friends.length <= otherFriends.length ? friends : otherFriends;
+        long[] large = small == friends ? otherFriends : friends;
+
+        long[] common = new long[intersect(small, large, null)];
+        if (common.length > 0) {
+            intersect(small, large, common);
+        }
+        return common;
+    }
+
+    // неизменяемое множество-представление друзей пользователя, всегда отражающее текущее состояние графа
+    public Set<Long> friendsView(long userId) {
+        return new LongArraySet(() -> friendsOf(userId));
+    }
+
+    // неизменяемое множество-представление друзей пользователя на момент вызова
+    public Set<Long> friendsSnapshot(long userId) {
+        long[] friends = friendsOf(userId);
+        return new LongArraySet(() -> friends);
+    }
+
+    // передаёт в action каждого пользователя с друзьями и отсортированный массив их id;
+    // массивы общие для всех читателей и не должны изменяться
+    public void forEach(BiConsumer<Long, long[]> action) {
+        friendsByUser.forEach(action);
+    }
+
+    // полностью заменяет граф, например при загрузке из базы при старте приложения
+    public void rebuild(Map<Long, long[]> friendsOfUsers) {
+        friendsByUser.clear();
+        friendsOfUsers.forEach((userId, friends) -> {
+            long[] sorted = Arrays.stream(friends).sorted().distinct().toArray();
+            if (sorted.length > 0) {
+                friendsByUser.put(userId, sorted);
+            }
+        });
+    }
+
+    // число общих элементов small и large; если out не null, они записываются в него по порядку
+    static int intersect(long[] small, long[] large, long[] out) {
+        int count = 0;
+        int position = 0;
+        for (long value : small) {
+            position = lowerBound(large, position, value);
+            if (position == large.length) {
+                break;
+            }
+            if (large[position] == value) {
+                if (out != null) {
+                    out[count] = value;
+                }
+                count++;
+                position++;
+            }
+        }
+        return count;
+    }
+
+    // индекс первого элемента array начиная с from, не меньшего value: экспоненциальный, затем двоичный поиск
+    static int lowerBound(long[] array, int from, long value) {
+        if (from >= array.length || array[from] >= value) {
+            return from;
+        }
+
+        // инвариант: array[low] < value
+        int low = from;
+        int step = 1;
+        while (low + step < array.length && array[low + step] < value) {
+            low += step;
+            step <<= 1;
+        }
+
+        int index = Arrays.binarySearch(array, low + 1, Math.min(low + step, array.length), value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static final class LongArraySet extends AbstractSet<Long> {
+        private final Supplier<long[]> source;
+
+        private LongArraySet(Supplier<long[]> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Long value && Arrays.binarySearch(source.get(), value) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return source.get().length;
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            long[] values = source.get();
+            return new Iterator<>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < values.length;
+                }
+
+                @Override
+                public Long next() {
+                    if (index >= values.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return values[index++];
+                }
+            };
+        }
+    }
+}
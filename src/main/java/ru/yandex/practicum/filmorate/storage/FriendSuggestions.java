@@ -0,0 +1,232 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+// рекомендации «возможно, вы знакомы»: друзья друзей пользователя, упорядоченные по числу общих друзей.
+// Обход идёт по снимку графа дружбы в формате CSR (compressed sparse row): пользователи пронумерованы
+// по возрастанию id, друзья пользователя с номером i — targets[offsets[i]..offsets[i + 1]) как номера.
+// Снимок неизменяемый; пользователи, у которых друзья изменились после его построения, помечаются,
+// и для них друзья берутся из FriendGraph. Когда помеченных набирается REBUILD_THRESHOLD, снимок
+// перестраивается в фоновом потоке, а запрос, который набрал порог, его не ждёт. Обход ограничен
+// MAX_FRIENDS друзьями пользователя и MAX_FRIENDS друзьями каждого из них,
+// общие друзья считаются в хеш-таблице с открытой адресацией на примитивных массивах
+@Slf4j
+public class FriendSuggestions {
+    static final int REBUILD_THRESHOLD = 1024;
+    private static final int MAX_FRIENDS = 1000;
+    // общий для всех экземпляров поток перестроения снимков
+    private static final ExecutorService REBUILDER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "friend-suggestions-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FriendGraph friendGraph;
+    private final Executor rebuildExecutor;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    // снимок и помеченные пользователи публикуются вместе; во время перестроения помеченные
+    // до его начала остаются в previousChanged, пока новый снимок не опубликован
+    private volatile State state = new State(Snapshot.EMPTY, ConcurrentHashMap.newKeySet(), Set.of());
+
+    public FriendSuggestions(FriendGraph friendGraph) {
+        this(friendGraph, REBUILDER);
+    }
+
+    FriendSuggestions(FriendGraph friendGraph, Executor rebuildExecutor) {
+        this.friendGraph = friendGraph;
+        this.rebuildExecutor = rebuildExecutor;
+    }
+
+    // отмечает, что друзья пользователя изменились; вызывается после изменения FriendGraph.
+    // Пока снимок перестраивается, повторно перестроение не запускается
+    public void markChanged(long userId) {
+        Set<Long> changed = state.changed();
+        changed.add(userId);
+        if (changed.size() >= REBUILD_THRESHOLD && rebuildScheduled.compareAndSet(false, true)) {
+            rebuildExecutor.execute(this::rebuildInBackground);
+        }
+    }
+
+    private void rebuildInBackground() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // помеченные пользователи остаются помеченными, перестроение повторится при следующем изменении
+            log.error("Не удалось перестроить снимок графа дружбы", e);
+        } finally {
+            rebuildScheduled.set(false);
+        }
+    }
+
+    // строит новый снимок по текущему состоянию FriendGraph
+    public synchronized void rebuild() {
+        State current = state;
+        state = new State(current.snapshot(), ConcurrentHashMap.newKeySet(), current.changed());
+        Snapshot snapshot = Snapshot.of(friendGraph);
+        state = new State(snapshot, state.changed(), Set.of());
+    }
+
+    // id не более limit пользователей, которые не являются друзьями userId, но дружат с его друзьями,
+    // по убыванию числа общих друзей; при равенстве выше пользователь с меньшим id
+    public long[] suggest(long userId, int limit) {
+        if (limit <= 0) {
+            return new long[0];
+        }
+
+        State current = state;
+        long[] friends = friendGraph.friendsOf(userId);
+        LongIntCounter mutualFriends = new LongIntCounter();
+        for (int i = 0; i < Math.min(friends.length, MAX_FRIENDS); i++) {
+            long friendId = friends[i];
+            if (current.isChanged(friendId)) {
+                long[] friendsOfFriend = friendGraph.friendsOf(friendId);
+                for (int j = 0; j < Math.min(friendsOfFriend.length, MAX_FRIENDS); j++) {
+                    mutualFriends.increment(friendsOfFriend[j]);
+                }
+            } else {
+                current.snapshot().forEachFriend(friendId, MAX_FRIENDS, mutualFriends::increment);
+            }
+        }
+
+        TopIds top = new TopIds(limit);
+        mutualFriends.forEach((candidateId, count) -> {
+            if (candidateId != userId && Arrays.binarySearch(friends, candidateId) < 0) {
+                top.offer(candidateId, count);
+            }
+        });
+        return top.toArray();
+    }
+
+    private record State(Snapshot snapshot, Set<Long> changed, Set<Long> previousChanged) {
+        private boolean isChanged(long userId) {
+            return changed.contains(userId) || previousChanged.contains(userId);
+        }
+    }
+
+    // неизменяемый граф в формате CSR
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new long[0], new int[1], new int[0]);
+
+        private final long[] userIds;
+        private final int[] offsets;
+        private final int[] targets;
+
+        private Snapshot(long[] userIds, int[] offsets, int[] targets) {
+            this.userIds = userIds;
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        private static Snapshot of(FriendGraph friendGraph) {
+            Map<Long, long[]> friendsByUser = new HashMap<>();
+            friendGraph.forEach(friendsByUser::put);
+
+            // номера получают и пользователи, которые есть только в чужих списках друзей
+            long[] userIds = friendsByUser.entrySet().stream()
+                    .flatMapToLong(entry ->
+                            LongStream.concat(LongStream.of(entry.getKey()), Arrays.stream(entry.getValue())))
+                    .sorted()
+                    .distinct()
+                    .toArray();
+
+            int[] offsets = new int[userIds.length + 1];
+            for (int i = 0; i < userIds.length; i++) {
+                offsets[i + 1] = offsets[i] + friendsByUser.getOrDefault(userIds[i], new long[0]).length;
+            }
+
+            int[] targets = new int[offsets[userIds.length]];
+            for (int i = 0; i < userIds.length; i++) {
+                long[] friends = friendsByUser.get(userIds[i]);
+                if (friends != null) {
+                    for (int j = 0; j < friends.length; j++) {
+                        targets[offsets[i] + j] = Arrays.binarySearch(userIds, friends[j]);
+                    }
+                }
+            }
+            return new Snapshot(userIds, offsets, targets);
+        }
+
+        private void forEachFriend(long userId, int limit, LongConsumer action) {
+            int index = Arrays.binarySearch(userIds, userId);
+            if (index < 0) {
+                return;
+            }
+            int to = Math.min(offsets[index + 1], offsets[index] + limit);
+            for (int i = offsets[index]; i < to; i++) {
+                action.accept(userIds[targets[i]]);
+            }
+        }
+    }
+
+    // счётчики по id пользователя: хеш-таблица с открытой адресацией и линейным пробированием
+    private static final class LongIntCounter {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(64);
+        private int[] counts = new int[64];
+        private int size;
+
+        private void increment(long key) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int slot = slotOf(keys, key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+            }
+            counts[slot]++;
+        }
+
+        private void forEach(LongIntConsumer action) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    action.accept(keys[i], counts[i]);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = newKeys(oldKeys.length * 2);
+            counts = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slotOf(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int slotOf(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+
+    @FunctionalInterface
+    private interface LongIntConsumer {
+        void accept(long key, int value);
+    }
+}
@@ -1,21 +1,77 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
+@Timed(value = "filmorate.storage", histogram = true)
 public class InMemoryFilmStorage implements FilmStorage {
 
-    private final Map<Long, Film> films = new HashMap<>();
+    // хранилище используется из нескольких потоков обработки запросов: фильмы лежат в ConcurrentHashMap,
+    // лайки — в потокобезопасных множествах, а обновление заменяет фильм целиком новым объектом
+    private final ConcurrentMap<Long, Film> films = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    private final FilmRankings rankings = new FilmRankings();
+    private final FilmSimilarityIndex similarityIndex = new FilmSimilarityIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final EntityVersions versions = new EntityVersions();
     private static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895, 12, 28);
 
+    // типы записей журнала
+    private static final byte CREATE = 1;
+    private static final byte UPDATE = 2;
+    private static final byte LIKE = 3;
+    private static final byte UNLIKE = 4;
+
+    // журнал и снимки в каталоге filmorate.memory.journal.dir; без него фильмы хранятся только в памяти
+    private final StorageJournal journal;
+
+    public InMemoryFilmStorage() {
+        this.journal = StorageJournal.disabled();
+    }
+
+    @Autowired
+    public InMemoryFilmStorage(@Value("${filmorate.memory.journal.dir:}") String journalDir,
+                               @Value("${filmorate.memory.journal.fsync:true}") boolean fsync,
+                               @Value("${filmorate.memory.journal.snapshot-every:100000}") int snapshotEvery) {
+        this.journal = journalDir.isBlank()
+                ? StorageJournal.disabled()
+                : new StorageJournal(Path.of(journalDir), "films", fsync, snapshotEvery);
+    }
+
+    // загружает фильмы из снимка и повторяет журнал
+    @PostConstruct
+    public void recover() throws IOException {
+        journal.recover(this::readSnapshot, this::replay, this::writeSnapshot);
+    }
+
+    @PreDestroy
+    public void closeJournal() throws IOException {
+        journal.close();
+    }
+
     public Collection<Film> getAllFilms() {
         log.info("Получение всех фильмов.");
         return films.values();
@@ -31,83 +87,323 @@ public class InMemoryFilmStorage implements FilmStorage {
         }
     }
 
+    @Override
+    public boolean existsById(Long id) {
+        return films.containsKey(id);
+    }
+
+    // номер версии фильма для ETag, увеличивается при обновлении и изменении лайков
+    @Override
+    public long getVersion(Long id) {
+        return versions.get(id);
+    }
+
     public Film create(Film film) {
+        return journal.write(() -> createFilm(film), (created, out) -> writeCreateRecord(out, created));
+    }
+
+    private Film createFilm(Film film) {
         // формируем дополнительные данные
         film.setId(getNextId());
+        putFilm(film);
+        return film;
+    }
 
-        // сохраняем нового пользователя в памяти приложения
+    private void putFilm(Film film) {
+        Set<Long> likes = ConcurrentHashMap.newKeySet();
+        if (film.getLikes() != null) {
+            likes.addAll(film.getLikes());
+        }
+        film.setLikes(likes);
+
+        // сохраняем новый фильм в памяти приложения
         films.put(film.getId(), film);
-        return film;
+        rankings.addFilm(film.getId(), yearOf(film), genreIdsOf(film));
+        searchIndex.put(film.getId(), film.getName(), film.getDescription());
+        rankings.changeLikes(film.getId(), likes.size());
+        likes.forEach(userId -> similarityIndex.addLike(film.getId(), userId));
     }
 
     public Film update(Film newFilm) {
+        if (newFilm.getReleaseDate() != null && newFilm.getReleaseDate().isBefore(MIN_RELEASE_DATE)) {
+            log.warn("Указанна дата релиза раньше 28 декабря 1895 года");
+            throw new ValidationException("Дата релиза должна быть не раньше 28 декабря 1895 года");
+        }
 
-        if (films.containsKey(newFilm.getId())) {
-            Film oldFilm = films.get(newFilm.getId());
+        // в журнал пишется фильм целиком, после обновления
+        return journal.write(() -> replaceFilm(newFilm), (updatedFilm, out) -> {
+            out.writeByte(UPDATE);
+            writeFilm(out, updatedFilm);
+        });
+    }
 
-            if (newFilm.getReleaseDate().isBefore(MIN_RELEASE_DATE)) {
-                log.warn("Указанна дата релиза раньше 28 декабря 1895 года");
-                throw new ValidationException("Дата релиза должна быть не раньше 28 декабря 1895 года");
-            }
+    private Film replaceFilm(Film newFilm) {
+        // если фильм найден и все условия соблюдены, заменяем его обновлённой копией,
+        // чтобы параллельные чтения не видели частично обновлённый фильм
+        Film updatedFilm = films.computeIfPresent(newFilm.getId(), (id, oldFilm) -> Film.builder()
+                .id(id)
+                .name(newFilm.getName() != null ? newFilm.getName() : oldFilm.getName())
+                .description(newFilm.getDescription() != null ? newFilm.getDescription() : oldFilm.getDescription())
+                .releaseDate(newFilm.getReleaseDate() != null ? newFilm.getReleaseDate() : oldFilm.getReleaseDate())
+                .duration(newFilm.getDuration() != null ? newFilm.getDuration() : oldFilm.getDuration())
+                .likes(oldFilm.getLikes())
+                .genres(oldFilm.getGenres())
+                .mpa(oldFilm.getMpa())
+                .build());
 
-            // если фильм найден и все условия соблюдены, обновляем информацию о нём
-            if (newFilm.getName() != null) {
-                oldFilm.setName(newFilm.getName());
-            }
+        if (updatedFilm == null) {
+            throw new NotFoundException("Фильм с названием = " + newFilm.getName() + " не найден");
+        }
+        rankings.updateFilm(updatedFilm.getId(), yearOf(updatedFilm), genreIdsOf(updatedFilm));
+        searchIndex.put(updatedFilm.getId(), updatedFilm.getName(), updatedFilm.getDescription());
+        versions.bump(updatedFilm.getId());
+        return updatedFilm;
+    }
 
-            if (newFilm.getDescription() != null) {
-                oldFilm.setDescription(newFilm.getDescription());
-            }
+    @Override
+    public boolean addUserLike(Long id, Long userId) {
+        return journal.write(() -> like(id, userId), (added, out) -> writeLikeRecord(out, added, LIKE, id, userId));
+    }
 
-            if (newFilm.getReleaseDate() != null) {
-                oldFilm.setReleaseDate(newFilm.getReleaseDate());
-            }
+    private boolean like(long id, long userId) {
+        Film film = getFilmById(id).orElseThrow();
 
-            if (newFilm.getDuration() != null) {
-                oldFilm.setDuration(newFilm.getDuration());
-            }
+        // рейтинг меняется, только если лайк действительно добавлен этим вызовом
+        if (!film.getLikes().add(userId)) {
+            return false;
+        }
+        rankings.changeLikes(id, 1);
+        similarityIndex.addLike(id, userId);
+        versions.bump(id);
+        return true;
+    }
+
+    // пакет пишется в журнал одним сбросом на диск
+    @Override
+    public List<Film> createAll(List<Film> newFilms) {
+        return journal.writeAll(newFilms, this::createFilm, (film, created, out) -> writeCreateRecord(out, created));
+    }
 
-            return oldFilm;
+    // существование пользователей хранилище фильмов не проверяет, это делает сервис
+    @Override
+    public boolean[] addUserLikes(List<long[]> likes) {
+        List<Boolean> results = journal.writeAll(likes, like -> existsById(like[0]) && like(like[0], like[1]),
+                (like, added, out) -> writeLikeRecord(out, added, LIKE, like[0], like[1]));
+        boolean[] added = new boolean[likes.size()];
+        for (int i = 0; i < likes.size(); i++) {
+            added[i] = results.get(i);
         }
-        throw new NotFoundException("Фильм с названием = " + newFilm.getName() + " не найден");
+        return added;
     }
 
     @Override
-    public Film addUserLike(Long id, Long userId) {
+    public boolean deleteUserLike(Long id, Long userId) {
+        return journal.write(() -> unlike(id, userId), (removed, out) -> writeLikeRecord(out, removed, UNLIKE, id, userId));
+    }
+
+    private boolean unlike(long id, long userId) {
         Film film = getFilmById(id).orElseThrow();
 
-        Set<Long> userLikes = film.getLikes();
-        if (userLikes == null) {
-            userLikes = new HashSet<Long>();
+        if (!film.getLikes().remove(userId)) {
+            return false;
         }
-        userLikes.add(userId);
-        film.setLikes(userLikes);
+        rankings.changeLikes(id, -1);
+        similarityIndex.removeLike(id, userId);
+        versions.bump(id);
+        return true;
+    }
 
-        return film;
+    // число лайков берётся из рейтинга популярности, где оно меняется вместе с множеством лайков фильма
+    @Override
+    public long getLikesCount(Long id) {
+        return rankings.getLikes(id);
     }
 
     @Override
-    public void deleteUserLike(Long id, Long userId) {
-        Film film = getFilmById(id).orElseThrow();
+    public List<Film> findBestFilm(Long count, Integer genreId, Integer year) {
+        return getFilmsByIds(rankings.top(count, genreId, year));
+    }
 
-        Set<Long> userLikes = film.getLikes();
+    @Override
+    public List<Film> findSimilarFilms(Long id, int count) {
+        return getFilmsByIds(similarityIndex.similar(id, count));
+    }
 
-        userLikes.remove(userId);
-        film.setLikes(userLikes);
+    @Override
+    public List<Film> findRecommendedFilms(Long userId, int count) {
+        return getFilmsByIds(similarityIndex.recommend(userId, count));
     }
 
     @Override
-    public List<Film> findBestFilm(Long count) {
-        return List.of();
+    public List<Film> searchFilms(String query, int count) {
+        return getFilmsByIds(searchIndex.search(query, count));
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // id выдаются подряд, поэтому страница собирается перебором следующих за afterId id без сортировки
+    @Override
+    public List<Film> getFilmsPage(Long afterId, int limit) {
+        long maxId = lastId.get();
+        // afterId + 1 переполнился бы при afterId = Long.MAX_VALUE
+        if (afterId >= maxId) {
+            return List.of();
+        }
+        List<Film> page = new ArrayList<>(Math.min(limit, films.size()));
+        for (long id = Math.max(afterId, 0) + 1; id <= maxId && page.size() < limit; id++) {
+            Film film = films.get(id);
+            if (film != null) {
+                page.add(film);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> action) {
+        films.values().forEach(action);
+    }
+
+    private static Integer yearOf(Film film) {
+        return film.getReleaseDate() == null ? null : film.getReleaseDate().getYear();
+    }
+
+    private static List<Integer> genreIdsOf(Film film) {
+        if (film.getGenres() == null) {
+            return List.of();
+        }
+        return film.getGenres().stream().map(Genre::getId).toList();
+    }
+
+    // повторяет запись журнала; фильм, уже загруженный из снимка, заново не создаётся
+    private void replay(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case CREATE -> {
+                // снимок мог уже включить фильм, но сохранить счётчик id до его создания
+                Film film = readFilm(in);
+                lastId.accumulateAndGet(film.getId(), Math::max);
+                if (!films.containsKey(film.getId())) {
+                    putFilm(film);
+                }
+            }
+            case UPDATE -> replaceFilm(readFilm(in));
+            case LIKE -> like(in.readLong(), in.readLong());
+            case UNLIKE -> unlike(in.readLong(), in.readLong());
+            default -> throw new IOException("Неизвестный тип записи журнала фильмов: " + type);
+        }
+    }
+
+    // снимок сохраняется параллельно с изменениями, поэтому число фильмов берётся из копии списка
+    private void writeSnapshot(DataOutput out) throws IOException {
+        out.writeLong(lastId.get());
+        List<Film> snapshot = List.copyOf(films.values());
+        out.writeInt(snapshot.size());
+        for (Film film : snapshot) {
+            writeFilm(out, film);
+        }
+    }
+
+    private void readSnapshot(DataInput in) throws IOException {
+        lastId.set(in.readLong());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            putFilm(readFilm(in));
+        }
+    }
+
+    private static void writeCreateRecord(DataOutput out, Film film) throws IOException {
+        out.writeByte(CREATE);
+        writeFilm(out, film);
+    }
+
+    // запись о лайке пишется, только если лайк действительно добавлен или удалён
+    private static void writeLikeRecord(DataOutput out, boolean changed, byte type,
+                                        long id, long userId) throws IOException {
+        if (changed) {
+            out.writeByte(type);
+            out.writeLong(id);
+            out.writeLong(userId);
+        }
+    }
+
+    private static void writeFilm(DataOutput out, Film film) throws IOException {
+        out.writeLong(film.getId());
+        out.writeUTF(film.getName());
+        writeNullableString(out, film.getDescription());
+        out.writeLong(film.getReleaseDate().toEpochDay());
+        out.writeInt(film.getDuration());
+
+        Rating mpa = film.getMpa();
+        out.writeBoolean(mpa != null);
+        if (mpa != null) {
+            out.writeInt(mpa.getId());
+            writeNullableString(out, mpa.getName());
+        }
+
+        List<Genre> genres = film.getGenres() == null ? List.of() : film.getGenres();
+        out.writeInt(genres.size());
+        for (Genre genre : genres) {
+            out.writeInt(genre.getId());
+            writeNullableString(out, genre.getName());
+        }
+
+        Set<Long> likes = film.getLikes() == null ? Set.of() : film.getLikes();
+        long[] userIds = likes.stream().mapToLong(Long::longValue).toArray();
+        out.writeInt(userIds.length);
+        for (long userId : userIds) {
+            out.writeLong(userId);
+        }
+    }
+
+    private static Film readFilm(DataInput in) throws IOException {
+        Film film = Film.builder()
+                .id(in.readLong())
+                .name(in.readUTF())
+                .description(readNullableString(in))
+                .releaseDate(LocalDate.ofEpochDay(in.readLong()))
+                .duration(in.readInt())
+                .build();
+
+        if (in.readBoolean()) {
+            film.setMpa(Rating.builder().id(in.readInt()).name(readNullableString(in)).build());
+        }
+
+        int genreCount = in.readInt();
+        List<Genre> genres = new ArrayList<>(genreCount);
+        for (int i = 0; i < genreCount; i++) {
+            genres.add(Genre.builder().id(in.readInt()).name(readNullableString(in)).build());
+        }
+        film.setGenres(genres);
+
+        int likeCount = in.readInt();
+        Set<Long> likes = new HashSet<>();
+        for (int i = 0; i < likeCount; i++) {
+            likes.add(in.readLong());
+        }
+        film.setLikes(likes);
+        return film;
+    }
+
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
     }
 
-    // вспомогательный метод для генерации идентификатора нового пользователя
+    // вспомогательный метод для генерации идентификатора нового фильма
     private long getNextId() {
-        long currentMaxId = films.keySet()
-                .stream()
-                .mapToLong(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+        return lastId.incrementAndGet();
     }
 }
@@ -1,16 +1,72 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
+@Timed(value = "filmorate.storage", histogram = true)
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Long, User> users = new HashMap<>();
+    // хранилище используется из нескольких потоков обработки запросов: пользователи лежат в ConcurrentHashMap,
+    // а обновление заменяет пользователя целиком новым объектом
+    private final ConcurrentMap<Long, User> users = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    // дружба взаимная: ребро хранится в графе в обе стороны,
+    // поле friends пользователя — представление его строки в графе
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final FriendSuggestions friendSuggestions = new FriendSuggestions(friendGraph);
+    private final EntityVersions versions = new EntityVersions();
+
+    // типы записей журнала
+    private static final byte CREATE = 1;
+    private static final byte UPDATE = 2;
+    private static final byte FRIEND = 3;
+    private static final byte UNFRIEND = 4;
+
+    // журнал и снимки в каталоге filmorate.memory.journal.dir; без него пользователи хранятся только в памяти
+    private final StorageJournal journal;
+
+    public InMemoryUserStorage() {
+        this.journal = StorageJournal.disabled();
+    }
+
+    @Autowired
+    public InMemoryUserStorage(@Value("${filmorate.memory.journal.dir:}") String journalDir,
+                               @Value("${filmorate.memory.journal.fsync:true}") boolean fsync,
+                               @Value("${filmorate.memory.journal.snapshot-every:100000}") int snapshotEvery) {
+        this.journal = journalDir.isBlank()
+                ? StorageJournal.disabled()
+                : new StorageJournal(Path.of(journalDir), "users", fsync, snapshotEvery);
+    }
+
+    // загружает пользователей и дружбу из снимка и повторяет журнал
+    @PostConstruct
+    public void recover() throws IOException {
+        journal.recover(this::readSnapshot, this::replay, this::writeSnapshot);
+    }
+
+    @PreDestroy
+    public void closeJournal() throws IOException {
+        journal.close();
+    }
 
     public Collection<User> getAllUsers() {
         return users.values();
@@ -25,134 +81,292 @@ public class InMemoryUserStorage implements UserStorage {
         }
     }
 
+    @Override
+    public boolean existsById(Long id) {
+        return users.containsKey(id);
+    }
+
+    // номер версии пользователя для ETag, увеличивается при обновлении и изменении списка друзей
+    @Override
+    public long getVersion(Long id) {
+        return versions.get(id);
+    }
+
     public User create(User user) {
+        return journal.write(() -> createUser(user), (created, out) -> writeCreateRecord(out, created));
+    }
+
+    private User createUser(User user) {
         // формируем дополнительные данные
         user.setId(getNextId());
-
-        // сохраняем нового пользователя в памяти приложения
-        users.put(user.getId(), user);
+        putUser(user);
         return user;
     }
 
-    public User update(User newUser) {
+    private void putUser(User user) {
+        user.setFriends(friendGraph.friendsView(user.getId()));
 
-        if (users.containsKey(newUser.getId())) {
-            User oldUser = users.get(newUser.getId());
+        // сохраняем нового пользователя в памяти приложения
+        users.put(user.getId(), user);
+        lastId.accumulateAndGet(user.getId(), Math::max);
+    }
 
-            // если пользователь найден и все условия соблюдены, обновляем информацию о нём
-            if (newUser.getEmail() != null) {
-                oldUser.setEmail(newUser.getEmail());
-            }
+    // пакет пишется в журнал одним сбросом на диск
+    @Override
+    public List<User> createAll(List<User> newUsers) {
+        return journal.writeAll(newUsers, this::createUser, (user, created, out) -> writeCreateRecord(out, created));
+    }
 
-            if (newUser.getLogin() != null) {
-                oldUser.setLogin(newUser.getLogin());
-            }
+    public User update(User newUser) {
+        // в журнал пишется пользователь целиком, после обновления
+        return journal.write(() -> replaceUser(newUser), (updatedUser, out) -> {
+            out.writeByte(UPDATE);
+            writeUser(out, updatedUser);
+        });
+    }
 
-            if (newUser.getName() != null) {
-                oldUser.setName(newUser.getName());
-            }
+    private User replaceUser(User newUser) {
+        // если пользователь найден и все условия соблюдены, заменяем его обновлённой копией,
+        // чтобы параллельные чтения не видели частично обновлённого пользователя
+        User updatedUser = users.computeIfPresent(newUser.getId(), (id, oldUser) -> User.builder()
+                .id(id)
+                .email(newUser.getEmail() != null ? newUser.getEmail() : oldUser.getEmail())
+                .login(newUser.getLogin() != null ? newUser.getLogin() : oldUser.getLogin())
+                .name(newUser.getName() != null ? newUser.getName() : oldUser.getName())
+                .birthday(newUser.getBirthday() != null ? newUser.getBirthday() : oldUser.getBirthday())
+                .friends(oldUser.getFriends())
+                .build());
 
-            if (newUser.getBirthday() != null) {
-                oldUser.setBirthday(newUser.getBirthday());
-            }
-            return oldUser;
+        if (updatedUser == null) {
+            throw new NotFoundException("Пользователь с email = " + newUser.getEmail() + " не найден");
         }
-        throw new NotFoundException("Пользователь с email = " + newUser.getEmail() + " не найден");
+        versions.bump(updatedUser.getId());
+        return updatedUser;
     }
 
     @Override
-    public void addUserInFriends(Long id, Long friendId) {
+    public boolean addUserInFriends(Long id, Long friendId) {
+        checkUserExists(id);
+        checkUserExists(friendId);
 
-        User user = getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + id));
-        User friend = getUserById(friendId)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + friendId));
+        return journal.write(() -> befriend(id, friendId),
+                (added, out) -> writeFriendRecord(out, added, FRIEND, id, friendId));
+    }
 
+    private boolean befriend(long id, long friendId) {
         // если пользователь найден и все условия соблюдены, добавляем его в друзья
-        Set<Long> userFriends = user.getFriends();
-        if (userFriends == null) {
-            userFriends = new HashSet<Long>();
-        }
-
-        userFriends.add(friendId);
-        user.setFriends(userFriends);
+        boolean added = friendGraph.addFriend(id, friendId);
+        friendGraph.addFriend(friendId, id);
+        friendSuggestions.markChanged(id);
+        friendSuggestions.markChanged(friendId);
+        versions.bump(id);
+        versions.bump(friendId);
+        return added;
+    }
 
-        Set<Long> friendFriends = friend.getFriends();
-        if (friendFriends == null) {
-            friendFriends = new HashSet<Long>();
+    @Override
+    public boolean[] addUsersInFriends(List<long[]> friendships) {
+        List<Boolean> results = journal.writeAll(friendships,
+                friendship -> existsById(friendship[0]) && existsById(friendship[1])
+                        && befriend(friendship[0], friendship[1]),
+                (friendship, added, out) -> writeFriendRecord(out, added, FRIEND, friendship[0], friendship[1]));
+        boolean[] added = new boolean[friendships.size()];
+        for (int i = 0; i < friendships.size(); i++) {
+            added[i] = results.get(i);
         }
-        friendFriends.add(id);
-        friend.setFriends(friendFriends);
+        return added;
     }
 
     @Override
-    public void deleteUserFromFriends(Long id, Long friendId) {
+    public boolean deleteUserFromFriends(Long id, Long friendId) {
+        checkUserExists(id);
+        checkUserExists(friendId);
 
-        User user = getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + id));
-        User friend = getUserById(friendId)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + friendId));
+        return journal.write(() -> unfriend(id, friendId),
+                (removed, out) -> writeFriendRecord(out, removed, UNFRIEND, id, friendId));
+    }
 
+    private boolean unfriend(long id, long friendId) {
         // если пользователь найден и все условия соблюдены, удаляем его из друзей
-        Set<Long> userFriends = user.getFriends();
-
-        userFriends.remove(friendId);
-        user.setFriends(userFriends);
-
-        Set<Long> friendFriends = friend.getFriends();
-        friendFriends.remove(id);
-        friend.setFriends(friendFriends);
+        boolean removed = friendGraph.removeFriend(id, friendId);
+        friendGraph.removeFriend(friendId, id);
+        friendSuggestions.markChanged(id);
+        friendSuggestions.markChanged(friendId);
+        versions.bump(id);
+        versions.bump(friendId);
+        return removed;
     }
 
     @Override
     public List<User> findAllUsersInFriends(Long id) {
-        User user = getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + id));
-        ;
-        Set<Long> idsFriends = user.getFriends();
+        checkUserExists(id);
 
         // если пользователь найден и все условия соблюдены, то
         // получаем список пользователей, являющихся друзьями пользователя.
-        Set<User> friends = new HashSet<>();
-        for (Long idFriend : idsFriends) {
-            User friend = getUserById(idFriend)
-                    .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + idFriend));
-            ;
-            friends.add(friend);
-        }
-        return (List<User>) friends;
+        return getUsersByIds(friendGraph.friendsOf(id));
     }
 
     @Override
     public List<User> findCommonFriends(Long id, Long otherId) {
-        User user = getUserById(id)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + id));
-        User otherUser = getUserById(otherId)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + otherId));
+        checkUserExists(id);
+        checkUserExists(otherId);
 
         // если пользователи найдены и все условия соблюдены, то
         // получаем список пользователей, общих с другим пользователем.
-        Set<User> commonFriends = new HashSet<>();
+        return getUsersByIds(friendGraph.commonFriends(id, otherId));
+    }
+
+    @Override
+    public List<User> findFriendSuggestions(Long id, int count) {
+        checkUserExists(id);
+
+        return getUsersByIds(friendSuggestions.suggest(id, count));
+    }
+
+    // id выдаются подряд, поэтому страница собирается перебором следующих за afterId id без сортировки
+    @Override
+    public List<User> getUsersPage(Long afterId, int limit) {
+        long maxId = lastId.get();
+        // afterId + 1 переполнился бы при afterId = Long.MAX_VALUE
+        if (afterId >= maxId) {
+            return List.of();
+        }
+        List<User> page = new ArrayList<>(Math.min(limit, users.size()));
+        for (long id = Math.max(afterId, 0) + 1; id <= maxId && page.size() < limit; id++) {
+            User user = users.get(id);
+            if (user != null) {
+                page.add(user);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public List<User> findUsersInFriendsPage(Long id, Long afterId, int limit) {
+        checkUserExists(id);
+
+        return getUsersByIds(friendGraph.friendsAfter(id, afterId, limit));
+    }
+
+    @Override
+    public void streamAllUsers(Consumer<User> action) {
+        users.values().forEach(action);
+    }
+
+    private void checkUserExists(Long id) {
+        if (!users.containsKey(id)) {
+            throw new NotFoundException("Пользователь не найден с ID: " + id);
+        }
+    }
+
+    private List<User> getUsersByIds(long[] ids) {
+        List<User> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            User user = users.get(id);
+            if (user == null) {
+                throw new NotFoundException("Пользователь не найден с ID: " + id);
+            }
+            result.add(user);
+        }
+        return result;
+    }
 
-        for (Long idFriend : user.getFriends()) {
-            for (Long idOtherUserFriend : otherUser.getFriends()) {
-                if (Objects.equals(idFriend, idOtherUserFriend)) {
-                    commonFriends.add(getUserById(idFriend)
-                            .orElseThrow(() -> new NotFoundException("Пользователь не найден с ID: " + idFriend)));
+    // повторяет запись журнала; пользователь, уже загруженный из снимка, заново не создаётся
+    private void replay(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case CREATE -> {
+                User user = readUser(in);
+                if (!users.containsKey(user.getId())) {
+                    putUser(user);
                 }
             }
+            case UPDATE -> replaceUser(readUser(in));
+            case FRIEND -> befriend(in.readLong(), in.readLong());
+            case UNFRIEND -> unfriend(in.readLong(), in.readLong());
+            default -> throw new IOException("Неизвестный тип записи журнала пользователей: " + type);
+        }
+    }
+
+    // пользователи, затем строки графа дружбы; каждая строка начинается с true, список строк завершается false
+    private void writeSnapshot(DataOutput out) throws IOException {
+        // снимок сохраняется параллельно с изменениями, поэтому число пользователей берётся из копии списка
+        List<User> snapshot = List.copyOf(users.values());
+        out.writeInt(snapshot.size());
+        for (User user : snapshot) {
+            writeUser(out, user);
+        }
+
+        List<Map.Entry<Long, long[]>> rows = new ArrayList<>();
+        friendGraph.forEach((userId, friends) -> rows.add(Map.entry(userId, friends)));
+        for (Map.Entry<Long, long[]> row : rows) {
+            out.writeBoolean(true);
+            out.writeLong(row.getKey());
+            out.writeInt(row.getValue().length);
+            for (long friendId : row.getValue()) {
+                out.writeLong(friendId);
+            }
+        }
+        out.writeBoolean(false);
+    }
+
+    private void readSnapshot(DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            putUser(readUser(in));
+        }
+
+        Map<Long, long[]> friendsOfUsers = new HashMap<>();
+        while (in.readBoolean()) {
+            long userId = in.readLong();
+            long[] friends = new long[in.readInt()];
+            for (int i = 0; i < friends.length; i++) {
+                friends[i] = in.readLong();
+            }
+            friendsOfUsers.put(userId, friends);
         }
+        friendGraph.rebuild(friendsOfUsers);
+        friendSuggestions.rebuild();
+    }
+
+    private static void writeCreateRecord(DataOutput out, User user) throws IOException {
+        out.writeByte(CREATE);
+        writeUser(out, user);
+    }
+
+    // запись о дружбе пишется, только если она действительно добавлена или удалена
+    private static void writeFriendRecord(DataOutput out, boolean changed, byte type,
+                                          long id, long friendId) throws IOException {
+        if (changed) {
+            out.writeByte(type);
+            out.writeLong(id);
+            out.writeLong(friendId);
+        }
+    }
+
+    private static void writeUser(DataOutput out, User user) throws IOException {
+        out.writeLong(user.getId());
+        out.writeUTF(user.getEmail());
+        out.writeUTF(user.getLogin());
+        out.writeBoolean(user.getName() != null);
+        if (user.getName() != null) {
+            out.writeUTF(user.getName());
+        }
+        out.writeLong(user.getBirthday().toEpochDay());
+    }
 
-        return (List<User>) commonFriends;
+    private static User readUser(DataInput in) throws IOException {
+        return User.builder()
+                .id(in.readLong())
+                .email(in.readUTF())
+                .login(in.readUTF())
+                .name(in.readBoolean() ? in.readUTF() : null)
+                .birthday(LocalDate.ofEpochDay(in.readLong()))
+                .build();
     }
 
     // вспомогательный метод для генерации идентификатора нового пользователя
     private long getNextId() {
-        long currentMaxId = users.keySet()
-                .stream()
-                .mapToLong(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+        return lastId.incrementAndGet();
     }
 }
@@ -0,0 +1,257 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+// отложенная запись лайков (filmorate.likes.write-behind.enabled=true).
+// Лайки и их удаление копятся в памяти как итоговое состояние пары (фильм, пользователь):
+// повторные операции над одной парой схлопываются в одну. Буфер сбрасывается в базу пакетом
+// по достижении batch-size операций или раз в flush-interval-ms. Если накопилось capacity операций,
+// поток, добавляющий лайк, сначала сам пробует сбросить буфер; если места так и не появилось
+// (например, база недоступна), новая операция отклоняется ответом 503 и в очередь не попадает.
+//
+// Гарантии:
+// - ответ на лайк отправляется до записи в базу; при аварийной остановке процесса теряются
+//   операции, не сброшенные за последний интервал (не больше capacity);
+// - при штатной остановке приложения буфер сбрасывается полностью;
+// - чтения через FilmDbStorage этого экземпляра видят ещё не записанные лайки,
+//   прямые запросы к базе и другие экземпляры приложения — только после сброса;
+// - при ошибке записи операции остаются в буфере и повторяются при следующем сбросе,
+//   запись идемпотентна (merge и delete по ключу), поэтому частично записанный пакет безопасен.
+//
+// Запросы к базе выполняются без блокировок очереди фильма, а блокировки — ReentrantLock,
+// поэтому ожидание записи не закрепляет виртуальный поток за потоком-носителем
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+public class LikeWriteBuffer {
+    private static final String MERGE_LIKE = "merge into likes(film_id, user_id) key (film_id, user_id) values (?, ?);";
+    private static final String DELETE_LIKE = "delete from likes where film_id = ? and user_id = ?;";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final int capacity;
+
+    // очереди фильмов создаются один раз и не удаляются
+    private final ConcurrentMap<Long, PendingLikes> pendingByFilm = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "likes-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LikeWriteBuffer(JdbcTemplate jdbcTemplate,
+                           @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                           @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                           @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.capacity = Math.max(capacity, batchSize);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ставит лайк в очередь; false, если с учётом очереди лайк уже есть.
+    // existsInDb проверяет лайк в базе и вызывается, только если в очереди по паре ничего нет
+    public boolean like(long filmId, long userId, BooleanSupplier existsInDb) {
+        return enqueue(filmId, userId, true, existsInDb);
+    }
+
+    // ставит удаление лайка в очередь; false, если с учётом очереди лайка нет
+    public boolean unlike(long filmId, long userId, BooleanSupplier existsInDb) {
+        return enqueue(filmId, userId, false, existsInDb);
+    }
+
+    // дополняет лайки прочитанного из базы фильма ещё не записанными операциями
+    public Film applyPending(Film film) {
+        PendingLikes pending = pendingByFilm.get(film.getId());
+        if (pending == null) {
+            return film;
+        }
+
+        pending.lock.lock();
+        try {
+            pending.ops.forEach((userId, liked) -> {
+                if (liked) {
+                    film.getLikes().add(userId);
+                } else {
+                    film.getLikes().remove(userId);
+                }
+            });
+        } finally {
+            pending.lock.unlock();
+        }
+        return film;
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    // записывает накопленные операции в базу двумя пакетами и убирает из очереди те,
+    // которые не изменились за время записи. Сбросы идут по одному; очереди фильмов
+    // блокируются только на время копирования операций и их удаления, не на время записи
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            List<long[]> liked = new ArrayList<>();
+            List<long[]> unliked = new ArrayList<>();
+            pendingByFilm.forEach((filmId, pending) -> {
+                pending.lock.lock();
+                try {
+                    pending.ops.forEach((userId, like) -> (like ? liked : unliked).add(new long[]{filmId, userId}));
+                } finally {
+                    pending.lock.unlock();
+                }
+            });
+
+            if (liked.isEmpty() && unliked.isEmpty()) {
+                return;
+            }
+
+            writeBatch(MERGE_LIKE, liked);
+            writeBatch(DELETE_LIKE, unliked);
+            log.debug("Записано в базу лайков: {}, удалений лайков: {}", liked.size(), unliked.size());
+
+            release(liked, true);
+            release(unliked, false);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private boolean enqueue(long filmId, long userId, boolean like, BooleanSupplier existsInDb) {
+        if (pendingCount.get() >= capacity) {
+            makeRoom();
+        }
+
+        PendingLikes pending = pendingByFilm.computeIfAbsent(filmId, id -> new PendingLikes());
+        boolean added = false;
+        while (!added) {
+            Boolean pendingLike;
+            long released;
+            pending.lock.lock();
+            try {
+                pendingLike = pending.ops.get(userId);
+                released = pending.released;
+            } finally {
+                pending.lock.unlock();
+            }
+
+            // база опрашивается без блокировки; если за это время очередь пары изменилась
+            // или сброс убрал из очереди записанные операции, ответ базы мог устареть — проверка повторяется
+            boolean liked = pendingLike != null ? pendingLike : existsInDb.getAsBoolean();
+
+            pending.lock.lock();
+            try {
+                if (!Objects.equals(pending.ops.get(userId), pendingLike) || pending.released != released) {
+                    continue;
+                }
+                if (liked == like) {
+                    return false;
+                }
+                if (pendingLike == null && pendingCount.incrementAndGet() > capacity) {
+                    pendingCount.decrementAndGet();
+                    throw queueFull();
+                }
+                pending.ops.put(userId, like);
+                added = true;
+            } finally {
+                pending.lock.unlock();
+            }
+        }
+
+        if (pendingCount.get() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+        return true;
+    }
+
+    // буфер заполнен: добавляющий поток сам записывает его, притормаживая поток лайков.
+    // Ошибка записи не выходит наружу: если места не появилось, новая операция отклоняется в enqueue
+    private void makeRoom() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Не удалось записать лайки в базу при заполненном буфере", e);
+        }
+    }
+
+    private ServiceUnavailableException queueFull() {
+        log.warn("Буфер отложенной записи лайков заполнен: {} операций", pendingCount.get());
+        return new ServiceUnavailableException("Лайки временно не принимаются, повторите запрос позже");
+    }
+
+    private void writeBatch(String sqlQuery, List<long[]> rows) {
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<long[]> batch = rows.subList(from, Math.min(from + batchSize, rows.size()));
+            jdbcTemplate.batchUpdate(sqlQuery, batch, batch.size(), (stmt, row) -> {
+                stmt.setLong(1, row[0]);
+                stmt.setLong(2, row[1]);
+            });
+        }
+    }
+
+    private void release(List<long[]> rows, boolean like) {
+        for (long[] row : rows) {
+            PendingLikes pending = pendingByFilm.get(row[0]);
+            pending.lock.lock();
+            try {
+                if (pending.ops.remove(row[1], like)) {
+                    pending.released++;
+                    pendingCount.decrementAndGet();
+                }
+            } finally {
+                pending.lock.unlock();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // исключение нельзя выпускать наружу: иначе планировщик перестанет запускать сброс
+            log.error("Не удалось записать лайки в базу, повтор при следующем сбросе", e);
+        }
+    }
+
+    // очередь фильма: итоговое состояние ещё не записанных лайков (true — лайк есть, false — удалён)
+    // и число операций, убранных из неё после записи в базу
+    private static final class PendingLikes {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Long, Boolean> ops = new HashMap<>();
+        private long released;
+    }
+}
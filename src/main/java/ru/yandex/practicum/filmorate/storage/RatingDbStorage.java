@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -12,6 +13,7 @@ import java.util.Optional;
 
 @Repository
 @RequiredArgsConstructor
+@Timed(value = "filmorate.storage", histogram = true)
 public class RatingDbStorage {
     private final JdbcTemplate jdbcTemplate;
     private final RatingRowMapper ratingRowMapper;
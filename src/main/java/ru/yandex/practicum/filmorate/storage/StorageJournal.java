@@ -0,0 +1,418 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// журнал изменений и снимок состояния для хранилища в памяти.
+// Каждое изменение дописывается в файл <name>.journal записью [длина][CRC32][данные];
+// при fsync=true изменение возвращается вызывающему только после сброса записи на диск.
+// Пакет изменений дописывается одним сбросом на диск. После snapshotEvery записей состояние
+// сохраняется в <name>.snapshot в фоновом потоке (через временный файл и атомарное переименование),
+// а из журнала удаляются записи, которые снимок уже включает. Запись в журнал на время
+// сохранения снимка не останавливается. При старте загружается снимок и поверх него
+// повторяются записи журнала; оборванная при аварии последняя запись (неполная или с неверной CRC)
+// отбрасывается, и журнал обрезается до последней целой записи.
+// Записи должны описывать итоговое состояние (фильм целиком, лайк есть или нет), тогда повтор
+// журнала поверх снимка, уже включающего часть этих записей, не меняет состояние
+@Slf4j
+public class StorageJournal implements Closeable {
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final StorageJournal DISABLED = new StorageJournal();
+    // общий для всех журналов поток сохранения снимков
+    private static final ExecutorService SNAPSHOTTER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "storage-journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final boolean fsync;
+    private final int snapshotEvery;
+    private final Executor snapshotExecutor;
+    // lock защищает канал журнала и порядок записей, snapshotLock не даёт сохранять два снимка сразу
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+    private DataWriter snapshotWriter;
+    private int recordsSinceSnapshot;
+
+    public StorageJournal(Path directory, String name, boolean fsync, int snapshotEvery) {
+        this(directory, name, fsync, snapshotEvery, SNAPSHOTTER);
+    }
+
+    StorageJournal(Path directory, String name, boolean fsync, int snapshotEvery, Executor snapshotExecutor) {
+        this.journalFile = directory.resolve(name + ".journal");
+        this.snapshotFile = directory.resolve(name + ".snapshot");
+        this.fsync = fsync;
+        this.snapshotEvery = snapshotEvery;
+        this.snapshotExecutor = snapshotExecutor;
+    }
+
+    private StorageJournal() {
+        this.journalFile = null;
+        this.snapshotFile = null;
+        this.fsync = false;
+        this.snapshotEvery = 0;
+        this.snapshotExecutor = null;
+    }
+
+    // журнал, который ничего не пишет: изменения выполняются только в памяти
+    public static StorageJournal disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return journalFile != null;
+    }
+
+    // загружает снимок и повторяет журнал, после чего журнал готов к записи.
+    // snapshotWriter сохраняет состояние хранилища в следующий снимок
+    public void recover(DataReader snapshotReader, DataReader recordReader,
+                        DataWriter snapshotWriter) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            recoverLocked(snapshotReader, recordReader, snapshotWriter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recoverLocked(DataReader snapshotReader, DataReader recordReader,
+                               DataWriter snapshotWriter) throws IOException {
+        this.snapshotWriter = snapshotWriter;
+        Files.createDirectories(journalFile.toAbsolutePath().getParent());
+
+        if (Files.exists(snapshotFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+                snapshotReader.read(in);
+            }
+        }
+
+        channel = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long validLength = replay(recordReader);
+        if (validLength < channel.size()) {
+            log.warn("Журнал {} обрезан до последней целой записи: {} из {} байт",
+                    journalFile, validLength, channel.size());
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        log.info("Хранилище восстановлено из {}, повторено записей журнала: {}", snapshotFile, recordsSinceSnapshot);
+    }
+
+    // выполняет изменение в памяти и дописывает его в журнал под одной блокировкой: порядок записей
+    // совпадает с порядком изменений, и запись не может попасть в журнал раньше изменения в памяти.
+    // Если change выбросил исключение или writer ничего не записал, журнал не меняется
+    public <T> T write(Supplier<T> change, RecordWriter<T> writer) {
+        if (!isEnabled()) {
+            return change.get();
+        }
+
+        lock.lock();
+        try {
+            checkRecovered();
+            T result = change.get();
+            List<byte[]> records = new ArrayList<>(1);
+            addRecord(records, out -> writer.write(result, out));
+            appendRecords(records);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // выполняет change для каждого элемента по порядку и дописывает все записи пакета одним сбросом
+    // на диск. Пакет не атомарен: если change выбросил исключение, записи уже выполненных изменений
+    // всё равно попадают в журнал, а после аварии восстанавливаются только целые записи
+    public <E, T> List<T> writeAll(List<E> items, Function<E, T> change, BatchRecordWriter<E, T> writer) {
+        List<T> results = new ArrayList<>(items.size());
+        if (!isEnabled()) {
+            items.forEach(item -> results.add(change.apply(item)));
+            return results;
+        }
+
+        lock.lock();
+        try {
+            checkRecovered();
+            List<byte[]> records = new ArrayList<>(items.size());
+            try {
+                for (E item : items) {
+                    T result = change.apply(item);
+                    results.add(result);
+                    addRecord(records, out -> writer.write(item, result, out));
+                }
+            } catch (RuntimeException e) {
+                try {
+                    appendRecords(records);
+                } catch (UncheckedIOException appendError) {
+                    e.addSuppressed(appendError);
+                }
+                throw e;
+            }
+            appendRecords(records);
+            return results;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // сохраняет состояние хранилища в новый снимок и удаляет из журнала записи, которые он включает.
+    // Состояние читается без блокировки записи: изменения, сделанные во время сохранения,
+    // остаются в журнале и при старте повторяются поверх снимка
+    public void snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            long includedLength;
+            int includedRecords;
+            lock.lock();
+            try {
+                if (channel == null) {
+                    return;
+                }
+                includedLength = channel.position();
+                includedRecords = recordsSinceSnapshot;
+            } finally {
+                lock.unlock();
+            }
+
+            Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tempFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)));
+                snapshotWriter.write(data);
+                data.flush();
+                out.force(true);
+            }
+            Files.move(tempFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // переименование должно дойти до диска раньше очистки журнала, иначе после сбоя питания
+            // остался бы старый снимок и пустой журнал
+            forceDirectory();
+
+            // если процесс остановится до очистки, записи журнала повторятся поверх снимка, который их уже включает
+            lock.lock();
+            try {
+                dropIncludedRecords(includedLength);
+                recordsSinceSnapshot -= includedRecords;
+            } finally {
+                lock.unlock();
+            }
+            log.info("Сохранён снимок {}, записей журнала в снимке: {}", snapshotFile, includedRecords);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // при штатной остановке состояние сохраняется снимком, чтобы следующий старт не повторял журнал
+    @Override
+    public void close() throws IOException {
+        snapshotLock.lock();
+        try {
+            snapshot();
+            lock.lock();
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void checkRecovered() {
+        if (channel == null) {
+            throw new IllegalStateException("Журнал " + journalFile + " не восстановлен");
+        }
+    }
+
+    private void addRecord(List<byte[]> records, DataWriter writer) {
+        try {
+            buffer.reset();
+            writer.write(new DataOutputStream(buffer));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать изменение в журнал " + journalFile, e);
+        }
+        if (buffer.size() > 0) {
+            records.add(buffer.toByteArray());
+        }
+    }
+
+    private void appendRecords(List<byte[]> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+
+        int size = 0;
+        for (byte[] payload : payloads) {
+            size += HEADER_SIZE + payload.length;
+        }
+        ByteBuffer records = ByteBuffer.allocate(size);
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            records.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        records.flip();
+
+        try {
+            long position = channel.position();
+            try {
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // недописанные записи убираются, иначе следующие записи после них не прочитались бы при старте
+                channel.truncate(position);
+                channel.position(position);
+                throw e;
+            }
+        } catch (IOException e) {
+            // изменения уже есть в памяти, но не в журнале: после перезапуска их не будет
+            throw new UncheckedIOException("Не удалось записать изменение в журнал " + journalFile, e);
+        }
+
+        recordsSinceSnapshot += payloads.size();
+        if (recordsSinceSnapshot >= snapshotEvery && snapshotScheduled.compareAndSet(false, true)) {
+            snapshotExecutor.execute(this::snapshotInBackground);
+        }
+    }
+
+    private void snapshotInBackground() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            // записи остаются в журнале, поэтому изменения не теряются; снимок повторится после следующей записи
+            log.error("Не удалось сохранить снимок {}", snapshotFile, e);
+        } finally {
+            snapshotScheduled.set(false);
+        }
+    }
+
+    // удаляет из начала журнала includedLength байт. Если во время сохранения снимка записей не было,
+    // журнал просто обрезается, иначе оставшиеся записи переносятся в новый файл журнала,
+    // который атомарно заменяет старый
+    private void dropIncludedRecords(long includedLength) throws IOException {
+        long length = channel.position();
+        if (includedLength == length) {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            return;
+        }
+
+        Path tempFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long copied = 0;
+            while (copied < length - includedLength) {
+                copied += channel.transferTo(includedLength + copied, length - includedLength - copied, out);
+            }
+            out.force(true);
+        }
+        Files.move(tempFile, journalFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+
+        channel.close();
+        channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    // сбрасывает на диск содержимое каталога журнала (переименования файлов).
+    // В Windows каталог нельзя открыть как файл, и метаданные NTFS сбрасываются самой файловой системой
+    private void forceDirectory() throws IOException {
+        if (File.separatorChar == '\\') {
+            return;
+        }
+        try (FileChannel directory = FileChannel.open(journalFile.toAbsolutePath().getParent(),
+                StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    // повторяет целые записи журнала и возвращает их общую длину в байтах
+    private long replay(DataReader recordReader) throws IOException {
+        channel.position(0);
+        // поток не закрывается: он закрыл бы и канал журнала
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        long validLength = 0;
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+
+            recordReader.read(new DataInputStream(new ByteArrayInputStream(payload)));
+            validLength += HEADER_SIZE + payload.length;
+            recordsSinceSnapshot++;
+        }
+        return validLength;
+    }
+
+    @FunctionalInterface
+    public interface DataReader {
+        void read(DataInput in) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface DataWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    // пишет запись об изменении по его результату; ничего не пишет, если изменения не было
+    @FunctionalInterface
+    public interface RecordWriter<T> {
+        void write(T result, DataOutput out) throws IOException;
+    }
+
+    // то же для пакета: запись пишется по элементу пакета и результату его изменения
+    @FunctionalInterface
+    public interface BatchRecordWriter<E, T> {
+        void write(E item, T result, DataOutput out) throws IOException;
+    }
+}
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// не более limit id с наибольшей оценкой; при равной оценке выше меньший id.
+// limit невелик, поэтому вставка в упорядоченный массив дешевле кучи
+final class TopIds {
+    private final long[] ids;
+    private final double[] scores;
+    private int size;
+
+    TopIds(int limit) {
+        this.ids = new long[limit];
+        this.scores = new double[limit];
+    }
+
+    void offer(long id, double score) {
+        int position = size;
+        while (position > 0 && (scores[position - 1] < score
+                || (scores[position - 1] == score && ids[position - 1] > id))) {
+            position--;
+        }
+        if (position >= ids.length) {
+            return;
+        }
+
+        int moved = Math.min(size, ids.length - 1) - position;
+        System.arraycopy(ids, position, ids, position + 1, moved);
+        System.arraycopy(scores, position, scores, position + 1, moved);
+        ids[position] = id;
+        scores[position] = score;
+        size = Math.min(size + 1, ids.length);
+    }
+
+    long[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    List<Long> toList() {
+        List<Long> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(ids[i]);
+        }
+        return result;
+    }
+}
@@ -1,51 +1,87 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.mappers.UserRowMapper;
 
 import java.sql.PreparedStatement;
-import java.util.Collection;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
-@Primary
 @Repository
 @RequiredArgsConstructor
+@Timed(value = "filmorate.storage", histogram = true)
 public class UserDbStorage implements UserStorage {
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String USER_SELECT = "select user_id, email, user_login, user_name, birthday from users ";
 
     private final JdbcTemplate jdbcTemplate;
     private final UserRowMapper userRowMapper;
+    // копия таблицы FRIENDSHIP в памяти: списки друзей и общие друзья берутся из неё без запросов к базе.
+    // Граф обновляется вместе с таблицей, поэтому все записи дружбы должны идти через это хранилище
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final FriendSuggestions friendSuggestions = new FriendSuggestions(friendGraph);
+    private final EntityVersions versions = new EntityVersions();
+
+    // загружает граф дружбы из таблицы FRIENDSHIP
+    @PostConstruct
+    public void rebuildFriendGraph() {
+        Map<Long, List<Long>> friendIdsByUser = new HashMap<>();
+        jdbcTemplate.query("select user_id, friend_id from friendship;", (RowCallbackHandler) rs ->
+                friendIdsByUser.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getLong(2)));
+
+        Map<Long, long[]> friendsOfUsers = new HashMap<>();
+        friendIdsByUser.forEach((userId, friendIds) ->
+                friendsOfUsers.put(userId, friendIds.stream().mapToLong(Long::longValue).toArray()));
+        friendGraph.rebuild(friendsOfUsers);
+        friendSuggestions.rebuild();
+    }
 
     @Override
     public Collection<User> getAllUsers() {
-        String sqlQuery = "select user_id, email, user_login, user_name, birthday " +
-                "from users;";
-        return jdbcTemplate.query(sqlQuery, userRowMapper);
+        String sqlQuery = USER_SELECT + ";";
+        return jdbcTemplate.query(sqlQuery, this::mapUserWithFriends);
     }
 
     @Override
     public Optional<User> getUserById(Long id) {
-        String sqlQuery = "select user_id, email, user_login, user_name, birthday " +
-                "from users where user_id = ?;";
+        String sqlQuery = USER_SELECT + "where user_id = ?;";
         User user;
         try {
-            user = jdbcTemplate.queryForObject(sqlQuery, userRowMapper, id);
+            user = jdbcTemplate.queryForObject(sqlQuery, this::mapUserWithFriends, id);
             return Optional.ofNullable(user);
         } catch (EmptyResultDataAccessException ignored) {
             return Optional.empty();
         }
     }
 
+    @Override
+    public boolean existsById(Long id) {
+        String sqlQuery = "select exists(select 1 from users where user_id = ?);";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, id));
+    }
+
+    // номер версии пользователя для ETag, увеличивается при обновлении и изменении списка друзей
+    @Override
+    public long getVersion(Long id) {
+        return versions.get(id);
+    }
+
     @Override
     public User create(User user) {
         String sqlQuery = "insert into users(email, user_login, user_name, birthday) " +
@@ -62,9 +98,47 @@ public class UserDbStorage implements UserStorage {
         }, keyHolder);
 
         user.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        user.setFriends(friendGraph.friendsSnapshot(user.getId()));
         return user;
     }
 
+    // пакетная вставка одной транзакцией, id пользователей берутся из сгенерированных ключей пакета
+    @Override
+    @Transactional
+    public List<User> createAll(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        String sqlQuery = "insert into users(email, user_login, user_name, birthday) " +
+                "values ( ?, ?, ?, ?)";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(sqlQuery, new String[]{"user_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        User user = users.get(i);
+                        stmt.setString(1, user.getEmail());
+                        stmt.setString(2, user.getLogin());
+                        stmt.setString(3, user.getName());
+                        stmt.setString(4, user.getBirthday().toString());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return users.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            user.setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            user.setFriends(friendGraph.friendsSnapshot(user.getId()));
+        }
+        return users;
+    }
+
     @Override
     public User update(User user) {
         String sqlQuery = "UPDATE users SET " +
@@ -78,44 +152,127 @@ public class UserDbStorage implements UserStorage {
                 user.getBirthday(),
                 user.getId());
 
-        userRowMapper.setFriendsOfUser(user);
+        user.setFriends(friendGraph.friendsSnapshot(user.getId()));
+        versions.bump(user.getId());
 
         return user;
     }
 
+    // первичный ключ (user_id, friend_id) отклоняет повторное добавление без предварительного чтения.
+    // Граф в памяти меняется после фиксации транзакции, чтобы откат не оставил в нём несуществующую дружбу
     @Override
-    public void addUserInFriends(Long id, Long friendId) {
+    public boolean addUserInFriends(Long id, Long friendId) {
         String sqlQuery = "insert into friendship(user_id, friend_id) values (?, ?);";
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
-            PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"user_id"});
-            stmt.setLong(1, id);
-            stmt.setLong(2, friendId);
+        try {
+            jdbcTemplate.update(sqlQuery, id, friendId);
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+        AfterCommit.run(() -> {
+            friendGraph.addFriend(id, friendId);
+            friendSuggestions.markChanged(id);
+        });
+        versions.bump(id);
+        return true;
+    }
 
-            return stmt;
-        }, keyHolder);
+    // пакетная вставка дружбы одной транзакцией. Строка вставляется, только если оба пользователя
+    // существуют и дружбы ещё нет, результат по каждой паре берётся из числа вставленных строк.
+    // Граф в памяти обновляется только после фиксации, поэтому откат пакета его не затрагивает
+    @Override
+    @Transactional
+    public boolean[] addUsersInFriends(List<long[]> friendships) {
+        String sqlQuery = "insert into friendship(user_id, friend_id) " +
+                "select u.user_id, f.user_id from users as u join users as f on f.user_id = ? " +
+                "where u.user_id = ? " +
+                "and not exists(select 1 from friendship as fr " +
+                "where fr.user_id = u.user_id and fr.friend_id = f.user_id);";
+        int[] inserted = jdbcTemplate.batchUpdate(sqlQuery, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                stmt.setLong(1, friendships.get(i)[1]);
+                stmt.setLong(2, friendships.get(i)[0]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return friendships.size();
+            }
+        });
+
+        boolean[] added = new boolean[friendships.size()];
+        for (int i = 0; i < friendships.size(); i++) {
+            if (inserted[i] > 0) {
+                versions.bump(friendships.get(i)[0]);
+                added[i] = true;
+            }
+        }
+        AfterCommit.run(() -> {
+            for (int i = 0; i < friendships.size(); i++) {
+                if (added[i]) {
+                    friendGraph.addFriend(friendships.get(i)[0], friendships.get(i)[1]);
+                    friendSuggestions.markChanged(friendships.get(i)[0]);
+                }
+            }
+        });
+        return added;
     }
 
     @Override
-    public void deleteUserFromFriends(Long id, Long friendId) {
+    public boolean deleteUserFromFriends(Long id, Long friendId) {
         String sqlQuery = "delete from friendship where user_id =? AND friend_id = ?;";
-        jdbcTemplate.update(sqlQuery, id, friendId);
+        int deleted = jdbcTemplate.update(sqlQuery, id, friendId);
+        AfterCommit.run(() -> {
+            friendGraph.removeFriend(id, friendId);
+            if (deleted > 0) {
+                friendSuggestions.markChanged(id);
+            }
+        });
+        if (deleted > 0) {
+            versions.bump(id);
+        }
+        return deleted > 0;
     }
 
     @Override
     public List<User> findAllUsersInFriends(Long id) {
-        String sqlQuery = "select users.user_id, users.email, users.user_login, users.user_name, users.birthday " +
-                "from users join friendship on users.user_id = friendship.friend_id where friendship.user_id = ?";
-        return jdbcTemplate.query(sqlQuery, userRowMapper, id);
+        return getUsersByIds(friendGraph.friendsOf(id));
     }
 
+    // общие друзья находятся пересечением списков в графе, строки пользователей читаются одним запросом
     @Override
     public List<User> findCommonFriends(Long id, Long otherId) {
-        String sqlQuery = "select u.user_id, u.email, u.user_login, u.user_name, u.birthday " +
-                "from friendship as f1 join friendship as f2 on f1.friend_id = f2.friend_id " +
-                "join users as u on u.user_id = f1.friend_id " +
-                "where f1.user_id = ? and  f2.user_id = ?";
-        return jdbcTemplate.query(sqlQuery, userRowMapper, id, otherId);
+        return getUsersByIds(friendGraph.commonFriends(id, otherId));
+    }
+
+    // друзья друзей по числу общих друзей; обход идёт по графу в памяти, строки читаются одним запросом
+    @Override
+    public List<User> findFriendSuggestions(Long id, int count) {
+        return getUsersByIds(friendSuggestions.suggest(id, count));
+    }
+
+    // keyset-пагинация: не более limit пользователей с id больше afterId
+    @Override
+    public List<User> getUsersPage(Long afterId, int limit) {
+        String sqlQuery = USER_SELECT + "where user_id > ? order by user_id limit ?;";
+        return jdbcTemplate.query(sqlQuery, this::mapUserWithFriends, afterId, limit);
+    }
+
+    @Override
+    public List<User> findUsersInFriendsPage(Long id, Long afterId, int limit) {
+        return getUsersByIds(friendGraph.friendsAfter(id, afterId, limit));
+    }
+
+    // передаёт пользователей в action по мере чтения из ResultSet, не собирая их в коллекцию
+    @Override
+    public void streamAllUsers(Consumer<User> action) {
+        String sqlQuery = USER_SELECT + "order by user_id;";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sqlQuery,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, (RowCallbackHandler) rs -> action.accept(mapUserWithFriends(rs, rs.getRow())));
     }
 
     public void insertUserData(String email, String login, String name, String date) {
@@ -131,4 +288,35 @@ public class UserDbStorage implements UserStorage {
             return stmt;
         }, keyHolder);
     }
+
+    // загружает пользователей одним запросом и возвращает их в порядке переданных id
+    private List<User> getUsersByIds(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+
+        Object[] args = Arrays.stream(ids).boxed().toArray();
+        String placeholders = String.join(", ", Collections.nCopies(ids.length, "?"));
+        String sqlQuery = USER_SELECT + "where user_id in (" + placeholders + ");";
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : jdbcTemplate.query(sqlQuery, this::mapUserWithFriends, args)) {
+            usersById.put(user.getId(), user);
+        }
+
+        List<User> users = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    // строка пользователя и его друзья из графа, без обращения к таблице дружбы
+    private User mapUserWithFriends(ResultSet rs, int rowNum) throws SQLException {
+        User user = userRowMapper.mapUser(rs, rowNum);
+        user.setFriends(friendGraph.friendsSnapshot(user.getId()));
+        return user;
+    }
 }
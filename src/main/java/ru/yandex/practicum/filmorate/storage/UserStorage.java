@@ -5,21 +5,43 @@ import ru.yandex.practicum.filmorate.model.User;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     Collection<User> getAllUsers();
 
     Optional<User> getUserById(Long id);
 
+    boolean existsById(Long id);
+
+    long getVersion(Long id);
+
     User create(User user);
 
     User update(User newUser);
 
-    void addUserInFriends(Long id, Long friendId);
+    // пакетная вставка, пользователям присваиваются id
+    List<User> createAll(List<User> users);
+
+    // true, если друг добавлен, и false, если он уже был в друзьях
+    boolean addUserInFriends(Long id, Long friendId);
+
+    // true, если друг удалён, и false, если его не было в друзьях
+    boolean deleteUserFromFriends(Long id, Long friendId);
 
-    void deleteUserFromFriends(Long id, Long friendId);
+    // пакетное добавление в друзья, пара — {id пользователя, id друга}; true там, где друг добавлен,
+    // false — если кого-то из пользователей нет или они уже друзья
+    boolean[] addUsersInFriends(List<long[]> friendships);
 
     List<User> findAllUsersInFriends(Long id);
 
     List<User> findCommonFriends(Long id, Long otherId);
+
+    List<User> findFriendSuggestions(Long id, int count);
+
+    List<User> getUsersPage(Long afterId, int limit);
+
+    List<User> findUsersInFriendsPage(Long id, Long afterId, int limit);
+
+    void streamAllUsers(Consumer<User> action);
 }
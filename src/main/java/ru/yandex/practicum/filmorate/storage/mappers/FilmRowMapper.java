@@ -5,32 +5,67 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.RatingService;
 
+import java.sql.Array;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
 public class FilmRowMapper implements RowMapper<Film> {
+    // выборка полностью собранного фильма одной строкой: рейтинг через join,
+    // жанры (по возрастанию id) и лайки агрегируются в массивы подзапросами
+    public static final String FILM_SELECT = "select f.film_id, f.film_name, f.description, f.release_date, " +
+            "f.duration, f.rating_id, r.rating_name, " +
+            "(select array_agg(g.genre_id order by g.genre_id) from genre as g where g.genre_id in " +
+            "(select fg.genre_id from film_genre as fg where fg.film_id = f.film_id)) as genre_ids, " +
+            "(select array_agg(g.genre_name order by g.genre_id) from genre as g where g.genre_id in " +
+            "(select fg.genre_id from film_genre as fg where fg.film_id = f.film_id)) as genre_names, " +
+            "(select array_agg(l.user_id) from likes as l where l.film_id = f.film_id) as likes " +
+            "from films as f left join rating as r on r.rating_id = f.rating_id ";
+
     private final JdbcTemplate jdbcTemplate;
+    private final GenreService genreService;
+    private final RatingService ratingService;
 
+    // маппинг строки, полученной запросом FILM_SELECT, без дополнительных обращений к базе.
+    // Жанры и рейтинг берутся из справочников сервисов, поэтому все фильмы ссылаются на одни и те же экземпляры
     @Override
     public Film mapRow(ResultSet rs, int rowNum) throws SQLException {
+        int ratingId = rs.getInt(6);
+        Rating mpa = null;
+        if (ratingId != 0) {
+            mpa = ratingService.resolveRating(ratingId, rs.getString(7));
+        }
+
+        Object[] genreIds = toArray(rs.getArray(8));
+        Object[] genreNames = toArray(rs.getArray(9));
+        List<Genre> genres = new ArrayList<>(genreIds.length);
+        for (int i = 0; i < genreIds.length; i++) {
+            genres.add(genreService.resolveGenre(((Number) genreIds[i]).intValue(), (String) genreNames[i]));
+        }
 
-        Film film = Film.builder()
+        Set<Long> likes = new HashSet<>();
+        for (Object userId : toArray(rs.getArray(10))) {
+            likes.add(((Number) userId).longValue());
+        }
+
+        return Film.builder()
                 .id(rs.getLong(1))
                 .name(rs.getString(2))
                 .description(rs.getString(3))
                 .releaseDate(rs.getDate(4).toLocalDate())
                 .duration(rs.getInt(5))
+                .mpa(mpa)
+                .genres(genres)
+                .likes(likes)
                 .build();
-
-        setLikesOfFilm(film);
-
-        return film;
     }
 
     public void setLikesOfFilm(Film film) {
@@ -42,4 +77,17 @@ public class FilmRowMapper implements RowMapper<Film> {
                 .collect(Collectors.toSet())
         );
     }
+
+    // агрегат по пустому набору строк возвращает null
+    private static Object[] toArray(Array array) throws SQLException {
+        if (array == null) {
+            return new Object[0];
+        }
+
+        try {
+            return (Object[]) array.getArray();
+        } finally {
+            array.free();
+        }
+    }
 }
@@ -19,17 +19,23 @@ public class UserRowMapper implements RowMapper<User> {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    // маппинг одного пользователя вместе с его друзьями, используется для выборки пользователя по id
     @Override
     public User mapRow(ResultSet rs, int rowNum) throws SQLException {
-        User user = User.builder()
+        User user = mapUser(rs, rowNum);
+        setFriendsOfUser(user);
+        return user;
+    }
+
+    // маппинг строки без обращения к таблице дружбы
+    public User mapUser(ResultSet rs, int rowNum) throws SQLException {
+        return User.builder()
                 .id(rs.getLong(1))
                 .email(rs.getString(2))
                 .login(rs.getString(3))
                 .name(rs.getString(4))
                 .birthday(rs.getDate(5).toLocalDate())
                 .build();
-        setFriendsOfUser(user);
-        return user;
     }
 
     public void setFriendsOfUser(User user) {
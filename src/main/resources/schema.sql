@@ -36,27 +36,42 @@ CREATE TABLE IF NOT EXISTS FILMS (
 	CONSTRAINT FILM_PK PRIMARY KEY (FILM_ID),
 	CONSTRAINT FILM_GENRE_FK FOREIGN KEY (RATING_ID) REFERENCES RATING (RATING_ID )
 );
-CREATE UNIQUE INDEX IF NOT EXISTS USERS_UNIQUE ON FILMS (FILM_ID);
 
 CREATE TABLE IF NOT EXISTS FILM_GENRE (
     FILM_ID INTEGER NOT NULL,
     GENRE_ID INTEGER NOT NULL,
+    CONSTRAINT FILM_GENRE_PK PRIMARY KEY (FILM_ID, GENRE_ID),
     FOREIGN KEY (FILM_ID) REFERENCES FILMS (FILM_ID) ON DELETE CASCADE,
     FOREIGN KEY (GENRE_ID) REFERENCES GENRE (GENRE_ID) ON DELETE CASCADE
 );
+-- базы, созданные до появления первичного ключа: повторяющиеся строки удаляются, затем добавляется ключ
+DELETE FROM FILM_GENRE G1 WHERE EXISTS (SELECT 1 FROM FILM_GENRE G2
+    WHERE G2.FILM_ID = G1.FILM_ID AND G2.GENRE_ID = G1.GENRE_ID AND G2._ROWID_ < G1._ROWID_);
+ALTER TABLE FILM_GENRE ADD CONSTRAINT IF NOT EXISTS FILM_GENRE_PK PRIMARY KEY (FILM_ID, GENRE_ID);
+CREATE INDEX IF NOT EXISTS FILM_GENRE_GENRE_IDX ON FILM_GENRE (GENRE_ID, FILM_ID);
 
 CREATE TABLE IF NOT EXISTS LIKES (
     FILM_ID INTEGER NOT NULL,
     USER_ID INTEGER NOT NULL,
+    CONSTRAINT LIKES_PK PRIMARY KEY (FILM_ID, USER_ID),
     FOREIGN KEY (FILM_ID) REFERENCES FILMS (FILM_ID) ON DELETE CASCADE,
     FOREIGN KEY (USER_ID) REFERENCES USERS (USER_ID) ON DELETE CASCADE
 );
+DELETE FROM LIKES L1 WHERE EXISTS (SELECT 1 FROM LIKES L2
+    WHERE L2.FILM_ID = L1.FILM_ID AND L2.USER_ID = L1.USER_ID AND L2._ROWID_ < L1._ROWID_);
+ALTER TABLE LIKES ADD CONSTRAINT IF NOT EXISTS LIKES_PK PRIMARY KEY (FILM_ID, USER_ID);
+CREATE INDEX IF NOT EXISTS LIKES_USER_IDX ON LIKES (USER_ID, FILM_ID);
 
 CREATE TABLE IF NOT EXISTS FRIENDSHIP (
     USER_ID INTEGER NOT NULL,
     FRIEND_ID INTEGER NOT NULL,
+    CONSTRAINT FRIENDSHIP_PK PRIMARY KEY (USER_ID, FRIEND_ID),
     FOREIGN KEY (USER_ID) REFERENCES USERS (USER_ID) ON DELETE CASCADE,
     FOREIGN KEY (FRIEND_ID) REFERENCES USERS (USER_ID) ON DELETE CASCADE
 );
+DELETE FROM FRIENDSHIP F1 WHERE EXISTS (SELECT 1 FROM FRIENDSHIP F2
+    WHERE F2.USER_ID = F1.USER_ID AND F2.FRIEND_ID = F1.FRIEND_ID AND F2._ROWID_ < F1._ROWID_);
+ALTER TABLE FRIENDSHIP ADD CONSTRAINT IF NOT EXISTS FRIENDSHIP_PK PRIMARY KEY (USER_ID, FRIEND_ID);
+CREATE INDEX IF NOT EXISTS FRIENDSHIP_FRIEND_IDX ON FRIENDSHIP (FRIEND_ID, USER_ID);
 
 
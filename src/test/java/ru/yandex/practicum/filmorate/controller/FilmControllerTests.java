@@ -1,15 +1,39 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.yandex.practicum.filmorate.dto.LikeDto;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmDbService;
 import ru.yandex.practicum.filmorate.service.GenreService;
 import ru.yandex.practicum.filmorate.service.RatingService;
+import ru.yandex.practicum.filmorate.service.UserDbService;
+import ru.yandex.practicum.filmorate.storage.CachingFilmStorage;
 import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
 import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.RatingDbStorage;
@@ -19,29 +43,71 @@ import ru.yandex.practicum.filmorate.storage.mappers.GenreRowMapper;
 import ru.yandex.practicum.filmorate.storage.mappers.RatingRowMapper;
 import ru.yandex.practicum.filmorate.storage.mappers.UserRowMapper;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, ValidationAutoConfiguration.class})
 @Import({FilmDbStorage.class, FilmRowMapper.class,
         GenreRowMapper.class, RatingRowMapper.class,
         GenreService.class, RatingService.class,
         UserDbStorage.class, UserRowMapper.class,
-        GenreDbStorage.class, RatingDbStorage.class})
+        GenreDbStorage.class, RatingDbStorage.class,
+        FilmController.class, FilmDbService.class, UserDbService.class,
+        JsonArrayStreamer.class, StreamLimiter.class, NdjsonImporter.class})
+// тесты выполняются без общей транзакции: рейтинги и индексы в памяти меняются только после фиксации,
+// поэтому данные удаляются после каждого теста явно, а счётчики id сбрасываются
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 public class FilmControllerTests {
     @Autowired
     FilmDbStorage filmStorage;
 
+    @Autowired
+    UserDbStorage userStorage;
+
+    @Autowired
+    FilmController filmController;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
     @BeforeEach
     public void beforeEach() {
         filmStorage.insertFilmData("name1", "description1", "2000-01-01", 100);
         filmStorage.insertFilmData("name2", "description2", "2000-02-01", 100);
     }
 
+    @AfterEach
+    public void afterEach() {
+        jdbcTemplate.update("delete from likes;");
+        jdbcTemplate.update("delete from film_genre;");
+        jdbcTemplate.update("delete from films;");
+        jdbcTemplate.update("delete from friendship;");
+        jdbcTemplate.update("delete from users;");
+        jdbcTemplate.update("alter table films alter column film_id restart with 1;");
+        jdbcTemplate.update("alter table users alter column user_id restart with 1;");
+        filmStorage.rebuildIndexes();
+        userStorage.rebuildFriendGraph();
+    }
+
     @Test
     public void testFindUserById() {
 
@@ -54,4 +120,336 @@ public class FilmControllerTests {
                         assertThat(film).hasFieldOrPropertyWithValue("id", 1L)
                 );
     }
+
+    @Test
+    public void testGetAllFilmsWithLikes() {
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        userStorage.insertUserData("321@mail.ru", "login2", "name2", "2000-02-02");
+        Long firstFilmId = filmStorage.getAllFilms().iterator().next().getId();
+        Collection<Long> userIds = userStorage.getAllUsers().stream().map(User::getId).toList();
+        userIds.forEach(userId -> filmStorage.addUserLike(firstFilmId, userId));
+
+        Collection<Film> films = filmStorage.getAllFilms();
+
+        assertThat(films.size()).isEqualTo(2);
+        for (Film film : films) {
+            Set<Long> expected = film.getId().equals(firstFilmId) ? Set.copyOf(userIds) : Set.of();
+            assertThat(film.getLikes()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testGetFilmByIdWithRatingAndGenres() {
+        Film newFilm = Film.builder()
+                .name("name3")
+                .description("description3")
+                .releaseDate(LocalDate.of(2000, 3, 1))
+                .duration(100)
+                .mpa(Rating.builder().id(3).build())
+                .genres(List.of(Genre.builder().id(2).build(), Genre.builder().id(1).build()))
+                .build();
+        Long filmId = filmStorage.create(newFilm).getId();
+
+        Film film = filmStorage.getFilmById(filmId).orElseThrow();
+
+        assertThat(film.getMpa()).isEqualTo(Rating.builder().id(3).name("PG-13").build());
+        assertThat(film.getGenres()).isEqualTo(List.of(
+                Genre.builder().id(1).name("Комедия").build(),
+                Genre.builder().id(2).name("Драма").build()));
+        assertThat(film.getLikes()).isEqualTo(Set.of());
+    }
+
+    @Test
+    public void testFilmsShareGenreAndRatingInstances() {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            filmIds.add(filmStorage.create(Film.builder()
+                    .name("name" + i)
+                    .description("description")
+                    .releaseDate(LocalDate.of(2000, 3, 1))
+                    .duration(100)
+                    .mpa(Rating.builder().id(2).build())
+                    .genres(List.of(Genre.builder().id(3).build()))
+                    .build()).getId());
+        }
+
+        List<Film> films = filmStorage.getFilmsByIds(filmIds);
+
+        assertSame(films.get(0).getMpa(), films.get(1).getMpa());
+        assertSame(films.get(0).getGenres().get(0), films.get(1).getGenres().get(0));
+        assertThat(films.get(0).getGenres().get(0).getName()).isEqualTo("Мультфильм");
+    }
+
+    @Test
+    public void testUpdateReplacesGenresOfFilm() {
+        Film newFilm = Film.builder()
+                .name("name3")
+                .description("description3")
+                .releaseDate(LocalDate.of(2000, 3, 1))
+                .duration(100)
+                .mpa(Rating.builder().id(1).build())
+                .genres(List.of(Genre.builder().id(1).build(), Genre.builder().id(2).build()))
+                .build();
+        Film film = filmStorage.create(newFilm);
+        film.setGenres(List.of(Genre.builder().id(2).build(), Genre.builder().id(3).build()));
+        filmStorage.update(film);
+        filmStorage.update(film);
+
+        Film updatedFilm = filmStorage.getFilmById(film.getId()).orElseThrow();
+
+        assertThat(updatedFilm.getGenres().stream().map(Genre::getId).toList()).isEqualTo(List.of(2, 3));
+    }
+
+    @Test
+    public void testAddUserLikeOnlyOnce() {
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        Long userId = userStorage.getAllUsers().iterator().next().getId();
+        Long filmId = filmStorage.getAllFilms().iterator().next().getId();
+
+        assertThat(filmStorage.addUserLike(filmId, userId)).isTrue();
+        assertThat(filmStorage.addUserLike(filmId, userId)).isFalse();
+        assertThat(filmStorage.getFilmById(filmId).orElseThrow().getLikes()).isEqualTo(Set.of(userId));
+        assertThat(filmStorage.deleteUserLike(filmId, userId)).isTrue();
+        assertThat(filmStorage.deleteUserLike(filmId, userId)).isFalse();
+    }
+
+    @Test
+    public void testCompactLikeResponsesContainOnlyLikesCount() throws JsonProcessingException {
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        userStorage.insertUserData("321@mail.ru", "login2", "name2", "2000-02-02");
+        Long filmId = filmStorage.getAllFilms().iterator().next().getId();
+        List<Long> userIds = userStorage.getAllUsers().stream().map(User::getId).toList();
+        filmStorage.addUserLike(filmId, userIds.get(0));
+
+        LikeDto added = filmController.addUserLikeCompact(filmId, userIds.get(1));
+
+        assertEquals(LikeDto.builder().filmId(filmId).userId(userIds.get(1)).liked(true).likes(2).build(), added);
+        assertEquals("{\"filmId\":" + filmId + ",\"userId\":" + userIds.get(1) + ",\"liked\":true,\"likes\":2}",
+                objectMapper.writeValueAsString(added));
+
+        LikeDto removed = filmController.deleteUserLikeCompact(filmId, userIds.get(1));
+
+        assertEquals(LikeDto.builder().filmId(filmId).userId(userIds.get(1)).liked(false).likes(1).build(), removed);
+        assertEquals(1, filmStorage.getLikesCount(filmId));
+    }
+
+    @Test
+    public void testFindMissingFilmWithAnyETagIsNotFound() {
+        Long missingId = filmStorage.getAllFilms().stream().map(Film::getId).max(Long::compare).orElseThrow() + 1;
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/films/" + missingId);
+        conditionalRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "*");
+        ServletWebRequest request = new ServletWebRequest(conditionalRequest, new MockHttpServletResponse());
+
+        assertThrows(NotFoundException.class, () -> filmController.findFilmById(missingId, request));
+    }
+
+    @Test
+    public void testRolledBackLikeIsNotCounted() {
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        Long filmId = filmStorage.getAllFilms().iterator().next().getId();
+        Long userId = userStorage.getAllUsers().iterator().next().getId();
+        // id повторяются между тестами, поэтому версия сравнивается с версией до транзакции
+        long version = filmStorage.getVersion(filmId);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            filmStorage.addUserLike(filmId, userId);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, filmStorage.getLikesCount(filmId));
+        assertEquals(version, filmStorage.getVersion(filmId));
+    }
+
+    @Test
+    public void testFindBestFilmIncludesFilmsWithoutLikes() {
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        Long userId = userStorage.getAllUsers().iterator().next().getId();
+        List<Long> filmIds = filmStorage.getAllFilms().stream().map(Film::getId).sorted().toList();
+        filmStorage.addUserLike(filmIds.get(1), userId);
+
+        List<Long> bestFilmIds = filmStorage.findBestFilm(100L, null, null).stream().map(Film::getId).toList();
+
+        assertThat(bestFilmIds).isEqualTo(List.of(filmIds.get(1), filmIds.get(0)));
+    }
+
+    @Test
+    public void testFindBestFilmByGenreAndYear() {
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        Long userId = userStorage.getAllUsers().iterator().next().getId();
+        Film comedy = filmStorage.create(Film.builder()
+                .name("comedy")
+                .description("description")
+                .releaseDate(LocalDate.of(1950, 1, 1))
+                .duration(100)
+                .mpa(Rating.builder().id(1).build())
+                .genres(List.of(Genre.builder().id(1).build()))
+                .build());
+        Film drama = filmStorage.create(Film.builder()
+                .name("drama")
+                .description("description")
+                .releaseDate(LocalDate.of(1950, 6, 1))
+                .duration(100)
+                .mpa(Rating.builder().id(1).build())
+                .genres(List.of(Genre.builder().id(2).build()))
+                .build());
+        filmStorage.addUserLike(drama.getId(), userId);
+
+        assertThat(filmStorage.findBestFilm(10L, null, 1950).stream().map(Film::getId).toList())
+                .isEqualTo(List.of(drama.getId(), comedy.getId()));
+        assertThat(filmStorage.findBestFilm(10L, 1, 1950).stream().map(Film::getId).toList())
+                .isEqualTo(List.of(comedy.getId()));
+
+        drama.setGenres(List.of(Genre.builder().id(1).build()));
+        filmStorage.update(drama);
+
+        assertThat(filmStorage.findBestFilm(10L, 1, 1950).stream().map(Film::getId).toList())
+                .isEqualTo(List.of(drama.getId(), comedy.getId()));
+    }
+
+    @Test
+    public void testFindSimilarAndRecommendedFilms() {
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        userStorage.insertUserData("456@mail.ru", "login2", "name2", "2000-01-01");
+        List<Long> userIds = userStorage.getAllUsers().stream().map(User::getId).sorted().toList();
+        List<Long> filmIds = filmStorage.getAllFilms().stream().map(Film::getId).sorted().toList();
+        filmStorage.addUserLike(filmIds.get(0), userIds.get(0));
+        filmStorage.addUserLike(filmIds.get(1), userIds.get(0));
+        filmStorage.addUserLike(filmIds.get(0), userIds.get(1));
+
+        assertThat(filmStorage.findSimilarFilms(filmIds.get(0), 10).stream().map(Film::getId).toList())
+                .isEqualTo(List.of(filmIds.get(1)));
+        assertThat(filmStorage.findRecommendedFilms(userIds.get(1), 10).stream().map(Film::getId).toList())
+                .isEqualTo(List.of(filmIds.get(1)));
+
+        filmStorage.deleteUserLike(filmIds.get(1), userIds.get(0));
+
+        assertThat(filmStorage.findRecommendedFilms(userIds.get(1), 10)).isEqualTo(List.of());
+    }
+
+    @Test
+    public void testSearchFilmsByNameAndDescription() {
+        Film film = filmStorage.create(Film.builder()
+                .name("Матрица")
+                .description("Хакер узнаёт правду о мире")
+                .releaseDate(LocalDate.of(1999, 3, 31))
+                .duration(136)
+                .mpa(Rating.builder().id(1).build())
+                .genres(List.of())
+                .build());
+
+        assertThat(filmStorage.searchFilms("матрицы", 10).stream().map(Film::getId).toList())
+                .isEqualTo(List.of(film.getId()));
+        assertThat(filmStorage.searchFilms("хакер узна", 10).stream().map(Film::getId).toList())
+                .isEqualTo(List.of(film.getId()));
+
+        film.setName("Матрица: перезагрузка");
+        film.setDescription("Продолжение");
+        filmStorage.update(film);
+
+        assertThat(filmStorage.searchFilms("хакер", 10)).isEqualTo(List.of());
+        assertThat(filmStorage.searchFilms("перезагрузка", 10).stream().map(Film::getId).toList())
+                .isEqualTo(List.of(film.getId()));
+    }
+
+    @Test
+    public void testRolledBackUpdateIsNotSearchable() {
+        Film film = filmStorage.create(Film.builder()
+                .name("Солярис")
+                .description("description")
+                .releaseDate(LocalDate.of(1972, 3, 20))
+                .duration(166)
+                .mpa(Rating.builder().id(1).build())
+                .genres(List.of())
+                .build());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            filmStorage.update(Film.builder()
+                    .id(film.getId())
+                    .name("Сталкер")
+                    .description(film.getDescription())
+                    .releaseDate(film.getReleaseDate())
+                    .duration(film.getDuration())
+                    .mpa(film.getMpa())
+                    .genres(List.of())
+                    .build());
+            status.setRollbackOnly();
+        });
+
+        assertThat(filmStorage.searchFilms("Сталкер", 10).isEmpty()).isTrue();
+        assertEquals(List.of(film.getId()),
+                filmStorage.searchFilms("Солярис", 10).stream().map(Film::getId).toList());
+    }
+
+    @Test
+    public void testRolledBackBatchIsNotIndexed() {
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        Long filmId = filmStorage.getAllFilms().iterator().next().getId();
+        Long userId = userStorage.getAllUsers().iterator().next().getId();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            filmStorage.createAll(List.of(Film.builder()
+                    .name("Зеркало")
+                    .description("description")
+                    .releaseDate(LocalDate.of(1975, 3, 7))
+                    .duration(108)
+                    .genres(List.of())
+                    .build()));
+            filmStorage.addUserLikes(List.of(new long[]{filmId, userId}));
+            status.setRollbackOnly();
+        });
+
+        assertThat(filmStorage.searchFilms("Зеркало", 10).isEmpty()).isTrue();
+        assertEquals(0, filmStorage.getLikesCount(filmId));
+    }
+
+    @Test
+    public void testCreateAllStoresFilmWithoutRating() {
+        Film film = filmStorage.createAll(List.of(Film.builder()
+                .name("Зеркало")
+                .description("description")
+                .releaseDate(LocalDate.of(1975, 3, 7))
+                .duration(108)
+                .genres(List.of())
+                .build())).getFirst();
+
+        assertThat(filmStorage.getFilmById(film.getId()).orElseThrow().getMpa()).isNull();
+        assertEquals(List.of(film.getId()),
+                filmStorage.searchFilms("Зеркало", 10).stream().map(Film::getId).toList());
+    }
+
+    @Test
+    public void testCreateAndUpdateFilmWithoutRating() {
+        Film film = filmStorage.create(Film.builder()
+                .name("Зеркало")
+                .description("description")
+                .releaseDate(LocalDate.of(1975, 3, 7))
+                .duration(108)
+                .genres(List.of())
+                .build());
+        filmStorage.update(Film.builder()
+                .id(film.getId())
+                .name("Ностальгия")
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .genres(List.of())
+                .build());
+
+        Film stored = filmStorage.getFilmById(film.getId()).orElseThrow();
+        assertEquals("Ностальгия", stored.getName());
+        assertThat(stored.getMpa()).isNull();
+    }
+
+    @Test
+    public void testCachedFilmIsInvalidatedByLike() {
+        CachingFilmStorage cachingFilmStorage = new CachingFilmStorage(filmStorage, new SimpleMeterRegistry(), 100, 600);
+        userStorage.insertUserData("123@mail.ru", "login1", "name1", "2000-01-01");
+        Long userId = userStorage.getAllUsers().iterator().next().getId();
+        Long filmId = filmStorage.getAllFilms().iterator().next().getId();
+
+        assertThat(cachingFilmStorage.getFilmById(filmId).orElseThrow().getLikes()).isEqualTo(Set.of());
+        cachingFilmStorage.addUserLike(filmId, userId);
+
+        assertThat(cachingFilmStorage.getFilmById(filmId).orElseThrow().getLikes()).isEqualTo(Set.of(userId));
+    }
 }
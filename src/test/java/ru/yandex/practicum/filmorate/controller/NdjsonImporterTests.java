@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dto.ImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.ImportReportDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class NdjsonImporterTests {
+    // проверка аннотаций не нужна: строки отклоняются при разборе или при записи пакета
+    private static final Validator NO_VIOLATIONS = (Validator) Proxy.newProxyInstance(
+            Validator.class.getClassLoader(), new Class<?>[]{Validator.class}, (proxy, method, args) -> Set.of());
+
+    private final NdjsonImporter importer = new NdjsonImporter(new ObjectMapper(), NO_VIOLATIONS, 10);
+
+    @Test
+    public void testReportKeepsFirstFailingLinesWhenBatchErrorsArriveLate() throws IOException {
+        StringBuilder body = new StringBuilder();
+        // пять строк пакета, который будет записан только в конце загрузки, затем строки с ошибкой разбора
+        for (int i = 1; i <= 5; i++) {
+            body.append("{\"id\":").append(i).append("}\n");
+        }
+        for (int i = 0; i < NdjsonImporter.MAX_REPORTED_ERRORS; i++) {
+            body.append("not json\n");
+        }
+
+        ImportReportDto report = importer.importLines(
+                new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)), Item.class,
+                batch -> {
+                    Map<Integer, String> errors = new HashMap<>();
+                    for (int i = 0; i < batch.size(); i++) {
+                        errors.put(i, "Строка не записана");
+                    }
+                    return errors;
+                });
+
+        assertEquals(NdjsonImporter.MAX_REPORTED_ERRORS + 5, report.getFailed());
+        assertEquals(LongStream.rangeClosed(1, NdjsonImporter.MAX_REPORTED_ERRORS).boxed().toList(),
+                report.getErrors().stream().map(ImportErrorDto::getLine).toList());
+        assertEquals("Строка не записана", report.getErrors().get(0).getMessage());
+    }
+
+    @Test
+    public void testReportOrdersErrorsByLine() throws IOException {
+        String body = """
+                {"id":1}
+                not json
+                {"id":3}
+                """;
+
+        ImportReportDto report = importer.importLines(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), Item.class,
+                batch -> Map.of(1, "Строка не записана"));
+
+        assertEquals(1, report.getImported());
+        assertEquals(List.of(2L, 3L), report.getErrors().stream().map(ImportErrorDto::getLine).toList());
+    }
+
+    public static class Item {
+        public long id;
+    }
+}
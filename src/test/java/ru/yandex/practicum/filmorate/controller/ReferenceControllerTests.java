@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.RatingService;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.RatingDbStorage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReferenceControllerTests {
+    private final GenreService genreService = new GenreService(new GenreDbStorage(null, null) {
+        @Override
+        public List<Genre> getAllGenre() {
+            return List.of(Genre.builder().id(1).name("Комедия").build());
+        }
+    });
+    private final RatingService ratingService = new RatingService(new RatingDbStorage(null, null) {
+        @Override
+        public List<Rating> getAllRating() {
+            return List.of(Rating.builder().id(1).name("G").build());
+        }
+    });
+    private final GenreController genreController = new GenreController(genreService);
+    private final RatingController ratingController = new RatingController(ratingService);
+
+    @BeforeEach
+    public void beforeEach() {
+        genreService.refresh();
+        ratingService.refresh();
+    }
+
+    @Test
+    public void testFindGenreByIdNotModified() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNull(genreController.findGenreById(1, anyETagRequest("/genres/1", response)));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+    }
+
+    @Test
+    public void testFindMissingGenreWithAnyETagIsNotFound() {
+        ServletWebRequest request = anyETagRequest("/genres/2", new MockHttpServletResponse());
+
+        assertThrows(NotFoundException.class, () -> genreController.findGenreById(2, request));
+    }
+
+    @Test
+    public void testFindMissingRatingWithAnyETagIsNotFound() {
+        ServletWebRequest request = anyETagRequest("/mpa/2", new MockHttpServletResponse());
+
+        assertThrows(NotFoundException.class, () -> ratingController.findRatingById(2, request));
+    }
+
+    private static ServletWebRequest anyETagRequest(String uri, MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "*");
+        return new ServletWebRequest(request, response);
+    }
+}
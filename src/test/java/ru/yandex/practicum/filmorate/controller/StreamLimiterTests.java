@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.CommonException;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StreamLimiterTests {
+
+    @Test
+    public void testRejectsStreamsOverLimitUntilPermitIsReleased() {
+        StreamLimiter limiter = new StreamLimiter(2, Duration.ofMinutes(1));
+        StreamLimiter.Permit first = limiter.acquire();
+        StreamLimiter.Permit second = limiter.acquire();
+
+        assertThrows(ServiceUnavailableException.class, limiter::acquire);
+
+        first.close();
+        // повторное закрытие не должно выдавать лишнее разрешение
+        first.close();
+        StreamLimiter.Permit third = limiter.acquire();
+        assertThrows(ServiceUnavailableException.class, limiter::acquire);
+
+        second.close();
+        third.close();
+    }
+
+    @Test
+    public void testPermitAbortsStreamAfterTimeout() throws InterruptedException {
+        StreamLimiter limiter = new StreamLimiter(1, Duration.ofMillis(20));
+
+        try (StreamLimiter.Permit permit = limiter.acquire()) {
+            permit.checkDeadline();
+            Thread.sleep(50);
+            assertThrows(CommonException.class, permit::checkDeadline);
+        }
+
+        // после прерванной выгрузки разрешение освобождено
+        limiter.acquire().close();
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TableExporterTests {
+    private static final List<String> COLUMNS = List.of("film_id", "film_name", "description");
+    private static final List<Object[]> ROWS = List.of(
+            new Object[]{1L, "Москва, 1980", "фильм \"о любви\""},
+            new Object[]{2L, null, "две\r\nстроки"},
+            new Object[]{3L, "Сталкер", "без особых символов"});
+
+    private final StreamLimiter streamLimiter = new StreamLimiter(1, Duration.ofMinutes(1));
+    private final TableExporter tableExporter = new TableExporter(new ObjectMapper(), streamLimiter);
+
+    @Test
+    public void testCsvQuotesSpecialCharacters() throws IOException {
+        String csv = new String(export("csv", false), StandardCharsets.UTF_8);
+
+        assertEquals("film_id,film_name,description\r\n" +
+                "1,\"Москва, 1980\",\"фильм \"\"о любви\"\"\"\r\n" +
+                "2,,\"две\r\nстроки\"\r\n" +
+                "3,Сталкер,без особых символов\r\n", csv);
+    }
+
+    @Test
+    public void testNdjsonWritesOneObjectPerLine() throws IOException {
+        String ndjson = new String(export("ndjson", false), StandardCharsets.UTF_8);
+
+        assertEquals("{\"film_id\":1,\"film_name\":\"Москва, 1980\",\"description\":\"фильм \\\"о любви\\\"\"}\n" +
+                "{\"film_id\":2,\"film_name\":null,\"description\":\"две\\r\\nстроки\"}\n" +
+                "{\"film_id\":3,\"film_name\":\"Сталкер\",\"description\":\"без особых символов\"}\n", ndjson);
+    }
+
+    @Test
+    public void testGzipOutputDecompressesToPlainOutput() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = tableExporter.export("films", COLUMNS,
+                TableExporterTests::rows, "csv", true);
+        byte[] compressed = write(response.getBody());
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertEquals(new String(export("csv", false), StandardCharsets.UTF_8),
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals("application/gzip", response.getHeaders().getContentType().toString());
+        assertTrue(response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION).contains("films.csv.gz"));
+    }
+
+    @Test
+    public void testExportHoldsStreamPermitUntilBodyIsWritten() throws IOException {
+        assertThrows(ValidationException.class,
+                () -> tableExporter.export("films", COLUMNS, TableExporterTests::rows, "xml", false));
+
+        ResponseEntity<StreamingResponseBody> response = tableExporter.export("films", COLUMNS,
+                TableExporterTests::rows, "csv", false);
+        assertThrows(ServiceUnavailableException.class,
+                () -> tableExporter.export("films", COLUMNS, TableExporterTests::rows, "csv", false));
+
+        write(response.getBody());
+        // после записи тела разрешение освобождено
+        streamLimiter.acquire().close();
+    }
+
+    private byte[] export(String format, boolean gzip) throws IOException {
+        return write(tableExporter.export("films", COLUMNS, TableExporterTests::rows, format, gzip).getBody());
+    }
+
+    private static byte[] write(StreamingResponseBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static void rows(Consumer<Object[]> action) {
+        ROWS.forEach(action);
+    }
+}
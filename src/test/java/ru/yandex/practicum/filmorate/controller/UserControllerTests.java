@@ -1,28 +1,67 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.yandex.practicum.filmorate.dto.ImportErrorDto;
+import ru.yandex.practicum.filmorate.dto.ImportReportDto;
+import ru.yandex.practicum.filmorate.dto.UserDto;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserDbService;
+import ru.yandex.practicum.filmorate.storage.ExportDbStorage;
+import ru.yandex.practicum.filmorate.storage.ExportTable;
 import ru.yandex.practicum.filmorate.storage.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.mappers.UserRowMapper;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({UserDbStorage.class, UserRowMapper.class, UserController.class, UserDbService.class})
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, ValidationAutoConfiguration.class})
+@Import({UserDbStorage.class, UserRowMapper.class, ExportDbStorage.class, UserController.class, UserDbService.class,
+        JsonArrayStreamer.class, StreamLimiter.class, NdjsonImporter.class})
+// тесты выполняются без общей транзакции: граф дружбы в памяти меняется только после фиксации,
+// поэтому данные удаляются после каждого теста явно, а счётчик id сбрасывается
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 public class UserControllerTests {
     private final UserDbStorage userStorage;
+    private final UserController userController;
+    private final ExportDbStorage exportDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
 
     @BeforeEach
     public void beforeEach() {
@@ -30,6 +69,15 @@ public class UserControllerTests {
         userStorage.insertUserData("321@mail.ru", "login2", "name2", "2000-02-02");
     }
 
+    @AfterEach
+    public void afterEach() {
+        jdbcTemplate.update("delete from friendship;");
+        jdbcTemplate.update("delete from likes;");
+        jdbcTemplate.update("delete from users;");
+        jdbcTemplate.update("alter table users alter column user_id restart with 1;");
+        userStorage.rebuildFriendGraph();
+    }
+
     @Test
     public void testFindUserById() {
 
@@ -42,4 +90,175 @@ public class UserControllerTests {
                         assertThat(user).hasFieldOrPropertyWithValue("id", 1L)
                 );
     }
+
+    @Test
+    public void testGetAllUsersWithFriends() {
+        Iterator<User> users = userStorage.getAllUsers().iterator();
+        Long userId = users.next().getId();
+        Long friendId = users.next().getId();
+        userStorage.addUserInFriends(userId, friendId);
+
+        for (User user : userStorage.getAllUsers()) {
+            Set<Long> expected = user.getId().equals(userId) ? Set.of(friendId) : Set.of();
+            assertThat(user.getFriends()).isEqualTo(expected);
+        }
+
+        List<User> friends = userStorage.findAllUsersInFriends(userId);
+        assertThat(friends.size()).isEqualTo(1);
+        assertThat(friends.getFirst().getId()).isEqualTo(friendId);
+        assertThat(friends.getFirst().getFriends()).isEqualTo(Set.of());
+    }
+
+    @Test
+    public void testRolledBackFriendshipIsNotInGraph() {
+        Iterator<User> users = userStorage.getAllUsers().iterator();
+        Long userId = users.next().getId();
+        Long friendId = users.next().getId();
+        // id повторяются между тестами, поэтому версия сравнивается с версией до транзакции
+        long version = userStorage.getVersion(userId);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userStorage.addUserInFriends(userId, friendId);
+            status.setRollbackOnly();
+        });
+
+        assertThat(userStorage.findAllUsersInFriends(userId).isEmpty()).isTrue();
+        assertThat(userStorage.getVersion(userId)).isEqualTo(version);
+    }
+
+    @Test
+    public void testRolledBackFriendshipBatchIsNotInGraph() {
+        Iterator<User> users = userStorage.getAllUsers().iterator();
+        Long userId = users.next().getId();
+        Long friendId = users.next().getId();
+        // id повторяются между тестами, поэтому версия сравнивается с версией до транзакции
+        long version = userStorage.getVersion(userId);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userStorage.addUsersInFriends(List.of(new long[]{userId, friendId}));
+            status.setRollbackOnly();
+        });
+
+        assertThat(userStorage.findAllUsersInFriends(userId).isEmpty()).isTrue();
+        assertThat(userStorage.getVersion(userId)).isEqualTo(version);
+    }
+
+    @Test
+    public void testFindCommonFriends() {
+        userStorage.insertUserData("456@mail.ru", "login3", "name3", "2000-03-03");
+        List<Long> userIds = userStorage.getAllUsers().stream().map(User::getId).sorted().toList();
+        userStorage.addUserInFriends(userIds.get(0), userIds.get(2));
+        userStorage.addUserInFriends(userIds.get(1), userIds.get(2));
+        userStorage.addUserInFriends(userIds.get(0), userIds.get(1));
+
+        List<User> commonFriends = userStorage.findCommonFriends(userIds.get(0), userIds.get(1));
+
+        assertThat(commonFriends.size()).isEqualTo(1);
+        assertThat(commonFriends.getFirst().getId()).isEqualTo(userIds.get(2));
+    }
+
+    @Test
+    public void testFindFriendSuggestions() {
+        userStorage.insertUserData("456@mail.ru", "login3", "name3", "2000-03-03");
+        List<Long> userIds = userStorage.getAllUsers().stream().map(User::getId).sorted().toList();
+        userStorage.addUserInFriends(userIds.get(0), userIds.get(1));
+        userStorage.addUserInFriends(userIds.get(1), userIds.get(2));
+
+        List<User> suggestions = userStorage.findFriendSuggestions(userIds.get(0), 10);
+
+        assertThat(suggestions.size()).isEqualTo(1);
+        assertThat(suggestions.getFirst().getId()).isEqualTo(userIds.get(2));
+    }
+
+    @Test
+    public void testImportUsersAndFriendships() throws IOException {
+        String users = """
+                {"email":"a@mail.ru","login":"importA","birthday":"2001-01-01"}
+                not json
+                {"email":"b@mail.ru","login":"importB","name":"","birthday":"2001-02-02"}
+                {"email":"c@mail.ru","login":"importC","birthday":"2001-03-03"}
+                """;
+        ImportReportDto usersReport = userController.importUsers(
+                new ByteArrayInputStream(users.getBytes(StandardCharsets.UTF_8)));
+        List<Long> userIds = userStorage.getAllUsers().stream()
+                .filter(user -> user.getLogin().startsWith("import"))
+                .map(User::getId)
+                .sorted()
+                .toList();
+
+        String friendships = String.format("""
+                {"userId":%1$d,"friendId":%2$d}
+                {"userId":%1$d,"friendId":%2$d}
+                {"userId":%1$d,"friendId":%1$d}
+                """, userIds.get(0), userIds.get(1));
+        ImportReportDto friendshipsReport = userController.importFriendships(
+                new ByteArrayInputStream(friendships.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(usersReport.getImported()).isEqualTo(2);
+        assertThat(usersReport.getErrors().stream().map(ImportErrorDto::getLine).toList()).isEqualTo(List.of(2L, 3L));
+        assertThat(userIds.size()).isEqualTo(2);
+        assertThat(friendshipsReport.getImported()).isEqualTo(1);
+        assertThat(friendshipsReport.getFailed()).isEqualTo(2);
+        assertThat(userStorage.findAllUsersInFriends(userIds.get(0)).getFirst().getId()).isEqualTo(userIds.get(1));
+    }
+
+    @Test
+    public void testExportUsers() {
+        List<Object> logins = new ArrayList<>();
+        exportDbStorage.streamTable(ExportTable.USERS, values -> {
+            assertThat(values.length).isEqualTo(3);
+            logins.add(values[1]);
+        });
+
+        assertThat(logins).isEqualTo(List.of("login1", "login2"));
+    }
+
+    @Test
+    public void testFindUserByIdNotModified() {
+        Long userId = userStorage.getAllUsers().iterator().next().getId();
+
+        ResponseEntity<UserDto> response = userController.findUserById(userId,
+                new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()));
+        String eTag = response.getHeaders().getETag();
+
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/users/" + userId);
+        conditionalRequest.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        MockHttpServletResponse conditionalResponse = new MockHttpServletResponse();
+        ResponseEntity<UserDto> notModified = userController.findUserById(userId,
+                new ServletWebRequest(conditionalRequest, conditionalResponse));
+
+        assertThat(response.getBody().getId()).isEqualTo(userId);
+        assertThat(notModified).isNull();
+        assertThat(conditionalResponse.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+    }
+
+    @Test
+    public void testFindMissingUserWithAnyETagIsNotFound() {
+        Long missingId = userStorage.getAllUsers().stream().map(User::getId).max(Long::compare).orElseThrow() + 1;
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/users/" + missingId);
+        conditionalRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "*");
+        ServletWebRequest request = new ServletWebRequest(conditionalRequest, new MockHttpServletResponse());
+
+        assertThrows(NotFoundException.class, () -> userController.findUserById(missingId, request));
+    }
+
+    @Test
+    public void testGetUsersPage() {
+        Long firstUserId = userStorage.getAllUsers().stream().map(User::getId).min(Long::compare).orElseThrow();
+
+        List<User> page = userStorage.getUsersPage(0L, 1);
+        List<User> nextPage = userStorage.getUsersPage(page.getFirst().getId(), 10);
+
+        assertThat(page.size()).isEqualTo(1);
+        assertThat(page.getFirst().getId()).isEqualTo(firstUserId);
+        assertThat(nextPage.stream().allMatch(user -> user.getId() > firstUserId)).isTrue();
+    }
+
+    @Test
+    public void testPageAfterWithoutLimitIsRejected() {
+        Long userId = userStorage.getAllUsers().iterator().next().getId();
+
+        assertThrows(ValidationException.class, () -> userController.findUsersPageWithoutLimit(0L));
+        assertThrows(ValidationException.class, () -> userController.findUsersInFriendsPageWithoutLimit(userId, 0L));
+    }
 }
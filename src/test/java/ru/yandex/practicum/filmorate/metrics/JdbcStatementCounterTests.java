@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JdbcStatementCounterTests {
+
+    @Test
+    public void testCountsStatementsOfCurrentRequest() throws SQLException {
+        JdbcStatementCounter counter = new JdbcStatementCounter();
+        DataSource dataSource = new StatementCountingDataSource(stubDataSource(), counter);
+
+        executeStatements(dataSource, 1);
+        counter.startRequest();
+        executeStatements(dataSource, 3);
+
+        assertEquals(3, counter.finishRequest());
+        assertEquals(4, counter.getTotal());
+        // после finishRequest запросы потока к HTTP-запросу не относятся
+        assertEquals(0, counter.finishRequest());
+    }
+
+    @Test
+    public void testStatementsFromOtherThreadsCountOnlyInTotal() throws Exception {
+        JdbcStatementCounter counter = new JdbcStatementCounter();
+        DataSource dataSource = new StatementCountingDataSource(stubDataSource(), counter);
+
+        counter.startRequest();
+        executeStatements(dataSource, 1);
+        Thread worker = new Thread(() -> {
+            try {
+                executeStatements(dataSource, 2);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        worker.start();
+        worker.join();
+
+        assertEquals(1, counter.finishRequest());
+        assertEquals(3, counter.getTotal());
+    }
+
+    @Test
+    public void testCountersAreIndependent() throws SQLException {
+        JdbcStatementCounter first = new JdbcStatementCounter();
+        JdbcStatementCounter second = new JdbcStatementCounter();
+
+        executeStatements(new StatementCountingDataSource(stubDataSource(), first), 2);
+
+        assertEquals(2, first.getTotal());
+        assertEquals(0, second.getTotal());
+    }
+
+    private static void executeStatements(DataSource dataSource, int count) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            for (int i = 0; i < count; i++) {
+                connection.prepareStatement("select 1");
+            }
+        }
+    }
+
+    // соединение, методы которого ничего не делают: счётчику важны только вызовы prepareStatement
+    private static DataSource stubDataSource() {
+        Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> null);
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> method.getName().equals("getConnection") ? connection : null);
+    }
+}
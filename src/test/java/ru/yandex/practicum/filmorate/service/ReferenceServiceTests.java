@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dto.GenreDto;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.storage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.RatingDbStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReferenceServiceTests {
+    private final List<Genre> genres = new ArrayList<>(List.of(
+            Genre.builder().id(1).name("Комедия").build(),
+            Genre.builder().id(4).name("Триллер").build()));
+    private final List<Rating> ratings = new ArrayList<>(List.of(
+            Rating.builder().id(1).name("G").build()));
+
+    private final GenreService genreService = new GenreService(new GenreDbStorage(null, null) {
+        @Override
+        public List<Genre> getAllGenre() {
+            return List.copyOf(genres);
+        }
+    });
+    private final RatingService ratingService = new RatingService(new RatingDbStorage(null, null) {
+        @Override
+        public List<Rating> getAllRating() {
+            return List.copyOf(ratings);
+        }
+    });
+
+    @Test
+    public void testGenresAreLookedUpById() {
+        genreService.refresh();
+
+        assertSame(genres.get(1), genreService.getGenre(4));
+        assertEquals(GenreDto.builder().id(4).name("Триллер").build(), genreService.findGenreById(4));
+        assertEquals(List.of(1, 4), genreService.findAllGenre().stream().map(GenreDto::getId).toList());
+        assertThrows(NotFoundException.class, () -> genreService.getGenre(2));
+        assertThrows(NotFoundException.class, () -> genreService.findGenreById(5));
+        assertThrows(NotFoundException.class, () -> genreService.getGenre(-1));
+    }
+
+    @Test
+    public void testResolveSharesInstancesFromTable() {
+        genreService.refresh();
+        ratingService.refresh();
+
+        assertSame(genreService.getGenre(1), genreService.resolveGenre(1, "Комедия"));
+        assertSame(ratingService.getRating(1), ratingService.resolveRating(1, "G"));
+        // жанр, которого ещё нет в справочнике, строится из строки фильма
+        assertEquals(Genre.builder().id(7).name("Вестерн").build(), genreService.resolveGenre(7, "Вестерн"));
+        assertEquals(Rating.builder().id(9).name("X").build(), ratingService.resolveRating(9, "X"));
+    }
+
+    @Test
+    public void testRefreshReplacesTableAndBumpsVersion() {
+        genreService.refresh();
+        long version = genreService.getVersion();
+        genres.add(Genre.builder().id(2).name("Драма").build());
+
+        genreService.refresh();
+
+        assertEquals(version + 1, genreService.getVersion());
+        assertEquals("Драма", genreService.getGenre(2).getName());
+        assertEquals(List.of(1, 4, 2), genreService.findAllGenre().stream().map(GenreDto::getId).toList());
+    }
+}
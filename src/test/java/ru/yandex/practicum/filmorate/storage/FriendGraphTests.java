@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FriendGraphTests {
+
+    @Test
+    public void testLowerBoundMatchesLinearSearch() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            long[] array = randomSorted(random, random.nextInt(100), 300);
+            int from = array.length == 0 ? 0 : random.nextInt(array.length + 1);
+            long value = random.nextInt(320) - 10;
+
+            int expected = from;
+            while (expected < array.length && array[expected] < value) {
+                expected++;
+            }
+            assertEquals(expected, FriendGraph.lowerBound(array, from, value),
+                    "массив " + Arrays.toString(array) + ", from " + from + ", значение " + value);
+        }
+    }
+
+    @Test
+    public void testLowerBoundAtBorders() {
+        long[] array = {1, 3, 5, 7, 9};
+
+        assertEquals(0, FriendGraph.lowerBound(array, 0, Long.MIN_VALUE));
+        assertEquals(5, FriendGraph.lowerBound(array, 0, Long.MAX_VALUE));
+        assertEquals(2, FriendGraph.lowerBound(array, 0, 5));
+        assertEquals(3, FriendGraph.lowerBound(array, 0, 6));
+        assertEquals(4, FriendGraph.lowerBound(array, 4, 1));
+        assertEquals(5, FriendGraph.lowerBound(array, 5, 1));
+        assertEquals(0, FriendGraph.lowerBound(new long[0], 0, 1));
+    }
+
+    @Test
+    public void testIntersectMatchesNaiveIntersection() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            // в том числе сильно разные по размеру массивы, на которых работает экспоненциальный поиск
+            long[] small = randomSorted(random, random.nextInt(20), 1000);
+            long[] large = randomSorted(random, random.nextInt(500), 1000);
+            long[] expected = Arrays.stream(small)
+                    .filter(value -> Arrays.binarySearch(large, value) >= 0)
+                    .toArray();
+
+            assertEquals(expected.length, FriendGraph.intersect(small, large, null));
+            long[] common = new long[expected.length];
+            FriendGraph.intersect(small, large, common);
+            assertArrayEquals(expected, common);
+        }
+    }
+
+    @Test
+    public void testCommonFriendsAndPages() {
+        FriendGraph graph = new FriendGraph();
+        for (long friendId : new long[]{2, 3, 4, 5}) {
+            graph.addFriend(1, friendId);
+        }
+        graph.addFriend(6, 4);
+        graph.addFriend(6, 2);
+        graph.addFriend(6, 7);
+
+        assertArrayEquals(new long[]{2, 4}, graph.commonFriends(1, 6));
+        assertArrayEquals(new long[]{3, 4}, graph.friendsAfter(1, 2, 2));
+        assertArrayEquals(new long[0], graph.friendsAfter(1, 5, 10));
+        assertArrayEquals(new long[0], graph.friendsAfter(1, Long.MAX_VALUE, 10));
+    }
+
+    private static long[] randomSorted(Random random, int size, int bound) {
+        return random.longs(size, 0, bound).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FriendSuggestionsTests {
+
+    @Test
+    public void testSuggestsFriendsOfFriendsByMutualCount() {
+        FriendGraph graph = new FriendGraph();
+        FriendSuggestions suggestions = new FriendSuggestions(graph, Runnable::run);
+        befriend(graph, suggestions, 1, 2);
+        befriend(graph, suggestions, 1, 3);
+        befriend(graph, suggestions, 2, 4);
+        befriend(graph, suggestions, 3, 4);
+        befriend(graph, suggestions, 2, 5);
+
+        assertArrayEquals(new long[]{4, 5}, suggestions.suggest(1, 10));
+        assertArrayEquals(new long[]{4}, suggestions.suggest(1, 1));
+        assertArrayEquals(new long[0], suggestions.suggest(1, 0));
+    }
+
+    @Test
+    public void testRebuildRunsInBackgroundAndSuggestionsStayCurrent() {
+        FriendGraph graph = new FriendGraph();
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        FriendSuggestions suggestions = new FriendSuggestions(graph, scheduled::add);
+
+        // пользователь 0 дружит со всеми, поэтому все остальные — кандидаты друг для друга
+        for (long userId = 1; userId <= FriendSuggestions.REBUILD_THRESHOLD + 10; userId++) {
+            befriend(graph, suggestions, 0, userId);
+        }
+
+        // порог пройден один раз, пока перестроение не выполнено, новое не ставится в очередь
+        assertEquals(1, scheduled.size());
+        assertArrayEquals(new long[]{2, 3}, suggestions.suggest(1, 2));
+
+        scheduled.poll().run();
+        befriend(graph, suggestions, 1, 2);
+
+        assertArrayEquals(new long[]{3, 4}, suggestions.suggest(1, 2));
+        assertEquals(0, scheduled.size());
+    }
+
+    private static void befriend(FriendGraph graph, FriendSuggestions suggestions, long userId, long friendId) {
+        graph.addFriend(userId, friendId);
+        graph.addFriend(friendId, userId);
+        suggestions.markChanged(userId);
+        suggestions.markChanged(friendId);
+    }
+}
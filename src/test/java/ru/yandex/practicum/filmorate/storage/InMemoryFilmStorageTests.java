@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InMemoryFilmStorageTests {
+    private static final int THREADS = 8;
+    private static final int LIKES_PER_THREAD = 500;
+    private static final int UPDATES_PER_THREAD = 200;
+
+    @Test
+    public void testParallelLikesAndUpdatesAreNotLost() throws Exception {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        long filmId = storage.create(Film.builder()
+                .name("name")
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .build()).getId();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                long firstUserId = (long) t * LIKES_PER_THREAD;
+                String name = "name" + t;
+                // лайки разных пользователей, каждый ставится, снимается и ставится снова
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    for (long userId = firstUserId; userId < firstUserId + LIKES_PER_THREAD; userId++) {
+                        storage.addUserLike(filmId, userId);
+                        storage.deleteUserLike(filmId, userId);
+                        storage.addUserLike(filmId, userId);
+                    }
+                    return null;
+                }));
+                // одновременно фильм заменяется обновлённой копией
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        storage.update(Film.builder().id(filmId).name(name).build());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int likes = THREADS * LIKES_PER_THREAD;
+        Film film = storage.getFilmById(filmId).orElseThrow();
+        assertEquals(likes, film.getLikes().size());
+        assertEquals(likes, storage.getLikesCount(filmId));
+        assertEquals(List.of(filmId), storage.findBestFilm(1L, null, null).stream().map(Film::getId).toList());
+        assertTrue(film.getName().startsWith("name"), "после обновлений фильм должен остаться целым");
+        assertEquals("description", film.getDescription());
+        // каждое изменение лайка и каждое обновление увеличивают версию ровно на 1
+        assertEquals(likes * 3L + THREADS * UPDATES_PER_THREAD, storage.getVersion(filmId));
+    }
+}
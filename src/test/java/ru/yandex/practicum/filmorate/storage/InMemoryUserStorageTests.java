@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InMemoryUserStorageTests {
+
+    @Test
+    public void testPagesFollowIdsAfterGivenOne() {
+        InMemoryUserStorage storage = new InMemoryUserStorage();
+        for (int i = 1; i <= 5; i++) {
+            storage.create(User.builder()
+                    .email(i + "@mail.ru")
+                    .login("login" + i)
+                    .name("name" + i)
+                    .birthday(LocalDate.of(2000, 1, i))
+                    .build());
+        }
+
+        assertEquals(List.of(1L, 2L), ids(storage.getUsersPage(0L, 2)));
+        assertEquals(List.of(3L, 4L), ids(storage.getUsersPage(2L, 2)));
+        assertEquals(List.of(5L), ids(storage.getUsersPage(4L, 2)));
+        assertEquals(List.of(), ids(storage.getUsersPage(5L, 2)));
+        assertEquals(List.of(), ids(storage.getUsersPage(Long.MAX_VALUE, 2)));
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::getId).toList();
+    }
+}
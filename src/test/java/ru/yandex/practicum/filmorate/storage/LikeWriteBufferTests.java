@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LikeWriteBufferTests {
+    // сброс по таймеру в тестах не срабатывает, буфер записывается явным вызовом flush
+    private static final long NEVER = 3_600_000;
+
+    private final LikesTable likes = new LikesTable();
+    private LikeWriteBuffer buffer;
+
+    @AfterEach
+    public void afterEach() {
+        likes.failing = false;
+        buffer.shutdown();
+    }
+
+    @Test
+    public void testOperationsOnPairAreCoalesced() {
+        buffer = new LikeWriteBuffer(likes, 100, 1000, NEVER);
+
+        assertTrue(buffer.like(1, 10, likes.exists(1, 10)));
+        assertTrue(buffer.unlike(1, 10, likes.exists(1, 10)));
+        assertTrue(buffer.like(1, 10, likes.exists(1, 10)));
+        assertFalse(buffer.like(1, 10, likes.exists(1, 10)));
+        assertTrue(buffer.like(1, 11, likes.exists(1, 11)));
+        assertEquals(2, buffer.getPendingCount());
+
+        buffer.flush();
+
+        assertEquals(Set.of(List.of(1L, 10L), List.of(1L, 11L)), likes.rows);
+        assertEquals(1, likes.batches.get());
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testDatabaseIsAskedOnlyWhenQueueHasNoOperationForPair() {
+        buffer = new LikeWriteBuffer(likes, 100, 1000, NEVER);
+        likes.rows.add(List.of(1L, 10L));
+        AtomicInteger lookups = new AtomicInteger();
+        BooleanSupplier existsInDb = () -> {
+            lookups.incrementAndGet();
+            return likes.rows.contains(List.of(1L, 10L));
+        };
+
+        assertFalse(buffer.like(1, 10, existsInDb));
+        assertTrue(buffer.unlike(1, 10, existsInDb));
+        assertFalse(buffer.unlike(1, 10, existsInDb));
+        assertEquals(2, lookups.get());
+
+        Film film = Film.builder().id(1L).likes(new HashSet<>(Set.of(10L))).build();
+        assertEquals(Set.of(), buffer.applyPending(film).getLikes());
+    }
+
+    @Test
+    public void testFullBufferRejectsOperationWithoutQueueingIt() {
+        buffer = new LikeWriteBuffer(likes, 2, 2, NEVER);
+        likes.failing = true;
+
+        assertTrue(buffer.like(1, 10, likes.exists(1, 10)));
+        assertTrue(buffer.like(1, 11, likes.exists(1, 11)));
+        // запись не удалась и места нет: лайк отклоняется и в очередь не попадает
+        assertThrows(ServiceUnavailableException.class, () -> buffer.like(1, 12, likes.exists(1, 12)));
+        assertEquals(2, buffer.getPendingCount());
+        Film film = Film.builder().id(1L).likes(new HashSet<>()).build();
+        assertEquals(Set.of(10L, 11L), buffer.applyPending(film).getLikes());
+        // изменение уже стоящей в очереди операции места не требует
+        assertTrue(buffer.unlike(1, 11, likes.exists(1, 11)));
+
+        likes.failing = false;
+        assertTrue(buffer.like(1, 12, likes.exists(1, 12)));
+
+        buffer.flush();
+        assertEquals(Set.of(List.of(1L, 10L), List.of(1L, 12L)), likes.rows);
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testParallelLikesAndFlushesEndInDatabase() throws Exception {
+        buffer = new LikeWriteBuffer(likes, 50, 100_000, NEVER);
+        int threads = 8;
+        int usersPerThread = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long firstUserId = (long) t * usersPerThread;
+                tasks.add(executor.submit(() -> {
+                    for (long userId = firstUserId; userId < firstUserId + usersPerThread; userId++) {
+                        long filmId = userId % 5;
+                        assertTrue(buffer.like(filmId, userId, likes.exists(filmId, userId)));
+                        assertTrue(buffer.unlike(filmId, userId, likes.exists(filmId, userId)));
+                        assertTrue(buffer.like(filmId, userId, likes.exists(filmId, userId)));
+                    }
+                    return null;
+                }));
+            }
+            Future<?> flushes = executor.submit(() -> {
+                while (!tasks.stream().allMatch(Future::isDone)) {
+                    buffer.flush();
+                }
+                return null;
+            });
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            flushes.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        buffer.flush();
+
+        assertEquals(threads * usersPerThread, likes.rows.size());
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    // таблица лайков в памяти вместо базы: принимает пакеты merge и delete из буфера
+    private static class LikesTable extends JdbcTemplate {
+        private final Set<List<Long>> rows = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger batches = new AtomicInteger();
+        private volatile boolean failing;
+
+        private BooleanSupplier exists(long filmId, long userId) {
+            return () -> rows.contains(List.of(filmId, userId));
+        }
+
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            if (failing) {
+                throw new DataAccessResourceFailureException("База недоступна");
+            }
+            batches.incrementAndGet();
+            for (T args : batchArgs) {
+                long[] row = (long[]) args;
+                if (sql.startsWith("merge")) {
+                    rows.add(List.of(row[0], row[1]));
+                } else {
+                    rows.remove(List.of(row[0], row[1]));
+                }
+            }
+            return new int[][]{};
+        }
+    }
+}
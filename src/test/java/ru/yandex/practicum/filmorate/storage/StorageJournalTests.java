@@ -0,0 +1,203 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StorageJournalTests {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecoversSnapshotAndJournalAfterCrash() throws IOException {
+        KeyValueStore store = new KeyValueStore();
+        StorageJournal journal = store.open(directory, 100, Runnable::run);
+        store.put(journal, 1, "один");
+        store.put(journal, 2, "два");
+        journal.snapshot();
+        store.put(journal, 3, "три");
+        store.remove(journal, 1);
+        // журнал не закрыт: процесс остановлен без снимка при остановке
+
+        KeyValueStore recovered = new KeyValueStore();
+        recovered.open(directory, 100, Runnable::run);
+
+        assertEquals(Map.of(2L, "два", 3L, "три"), recovered.values);
+        assertEquals(2, recovered.replayed);
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        KeyValueStore store = new KeyValueStore();
+        StorageJournal journal = store.open(directory, 100, Runnable::run);
+        store.put(journal, 1, "один");
+        store.put(journal, 2, "два");
+        Path journalFile = directory.resolve("test.journal");
+        long validLength = Files.size(journalFile);
+        // запись оборвана посередине: заголовок есть, данных меньше, чем в нём указано
+        Files.write(journalFile, new byte[]{0, 0, 0, 20, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        KeyValueStore recovered = new KeyValueStore();
+        StorageJournal recoveredJournal = recovered.open(directory, 100, Runnable::run);
+
+        assertEquals(Map.of(1L, "один", 2L, "два"), recovered.values);
+        assertEquals(validLength, Files.size(journalFile));
+
+        // записи после обрезки читаются при следующем старте
+        recovered.put(recoveredJournal, 3, "три");
+        KeyValueStore restarted = new KeyValueStore();
+        restarted.open(directory, 100, Runnable::run);
+        assertEquals(Map.of(1L, "один", 2L, "два", 3L, "три"), restarted.values);
+    }
+
+    @Test
+    public void testRecordWithWrongChecksumIsTruncated() throws IOException {
+        KeyValueStore store = new KeyValueStore();
+        StorageJournal journal = store.open(directory, 100, Runnable::run);
+        store.put(journal, 1, "один");
+        long validLength = Files.size(directory.resolve("test.journal"));
+        store.put(journal, 2, "два");
+        byte[] bytes = Files.readAllBytes(directory.resolve("test.journal"));
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(directory.resolve("test.journal"), bytes);
+
+        KeyValueStore recovered = new KeyValueStore();
+        recovered.open(directory, 100, Runnable::run);
+
+        assertEquals(Map.of(1L, "один"), recovered.values);
+        assertEquals(validLength, Files.size(directory.resolve("test.journal")));
+    }
+
+    @Test
+    public void testReplayOverSnapshotIsIdempotent() throws IOException {
+        KeyValueStore store = new KeyValueStore();
+        StorageJournal journal = store.open(directory, 100, Runnable::run);
+        store.put(journal, 1, "один");
+        store.put(journal, 2, "два");
+        store.remove(journal, 1);
+        store.put(journal, 2, "второй");
+        Path journalFile = directory.resolve("test.journal");
+        byte[] records = Files.readAllBytes(journalFile);
+        journal.snapshot();
+        // сбой после сохранения снимка, но до очистки журнала: записи повторяются поверх снимка
+        Files.write(journalFile, records);
+
+        KeyValueStore recovered = new KeyValueStore();
+        recovered.open(directory, 100, Runnable::run);
+
+        assertEquals(Map.of(2L, "второй"), recovered.values);
+        assertEquals(4, recovered.replayed);
+    }
+
+    @Test
+    public void testRecordsWrittenDuringSnapshotStayInJournal() throws IOException {
+        KeyValueStore store = new KeyValueStore();
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        StorageJournal journal = store.open(directory, 2, scheduled::add);
+        store.put(journal, 1, "один");
+        store.put(journal, 2, "два");
+        assertEquals(1, scheduled.size());
+
+        // запись в журнал, пока состояние сохраняется в снимок
+        store.duringSnapshot = () -> store.put(journal, 3, "три");
+        scheduled.poll().run();
+
+        KeyValueStore recovered = new KeyValueStore();
+        recovered.open(directory, 100, Runnable::run);
+
+        assertEquals(Map.of(1L, "один", 2L, "два", 3L, "три"), recovered.values);
+        assertEquals(1, recovered.replayed);
+    }
+
+    @Test
+    public void testBatchSkipsUnchangedItems() throws IOException {
+        KeyValueStore store = new KeyValueStore();
+        StorageJournal journal = store.open(directory, 100, Runnable::run);
+
+        List<Boolean> results = journal.writeAll(List.of(1L, 2L, 1L),
+                id -> store.values.putIfAbsent(id, "значение " + id) == null,
+                (id, added, out) -> {
+                    if (added) {
+                        writePut(out, id, "значение " + id);
+                    }
+                });
+
+        KeyValueStore recovered = new KeyValueStore();
+        recovered.open(directory, 100, Runnable::run);
+
+        assertEquals(List.of(true, true, false), results);
+        assertEquals(Map.of(1L, "значение 1", 2L, "значение 2"), recovered.values);
+        assertEquals(2, recovered.replayed);
+    }
+
+    private static void writePut(DataOutput out, long id, String value) throws IOException {
+        out.writeLong(id);
+        out.writeBoolean(true);
+        out.writeUTF(value);
+    }
+
+    // хранилище «ключ — значение», записи журнала описывают итоговое значение ключа
+    private static final class KeyValueStore {
+        private final Map<Long, String> values = new TreeMap<>();
+        private int replayed;
+        private Runnable duringSnapshot = () -> {
+        };
+
+        private StorageJournal open(Path directory, int snapshotEvery, Executor executor) throws IOException {
+            StorageJournal journal = new StorageJournal(directory, "test", true, snapshotEvery, executor);
+            journal.recover(this::readSnapshot, this::replay, this::writeSnapshot);
+            return journal;
+        }
+
+        private void put(StorageJournal journal, long id, String value) {
+            journal.write(() -> values.put(id, value), (previous, out) -> writePut(out, id, value));
+        }
+
+        private void remove(StorageJournal journal, long id) {
+            journal.write(() -> values.remove(id), (previous, out) -> {
+                out.writeLong(id);
+                out.writeBoolean(false);
+            });
+        }
+
+        private void replay(DataInput in) throws IOException {
+            long id = in.readLong();
+            if (in.readBoolean()) {
+                values.put(id, in.readUTF());
+            } else {
+                values.remove(id);
+            }
+            replayed++;
+        }
+
+        private void writeSnapshot(DataOutput out) throws IOException {
+            out.writeInt(values.size());
+            for (Map.Entry<Long, String> entry : values.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            duringSnapshot.run();
+        }
+
+        private void readSnapshot(DataInput in) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                values.put(in.readLong(), in.readUTF());
+            }
+        }
+    }
+}
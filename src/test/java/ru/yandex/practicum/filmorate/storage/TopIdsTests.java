@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TopIdsTests {
+
+    @Test
+    public void testKeepsHighestScoresAndPrefersSmallerIdOnTie() {
+        TopIds top = new TopIds(3);
+        top.offer(5, 1.0);
+        top.offer(7, 3.0);
+        top.offer(2, 1.0);
+        top.offer(9, 2.0);
+        top.offer(1, 0.5);
+        top.offer(4, 2.0);
+
+        assertEquals(List.of(7L, 4L, 9L), top.toList());
+    }
+
+    @Test
+    public void testReturnsFewerIdsThanLimit() {
+        TopIds top = new TopIds(5);
+        top.offer(3, 1.0);
+        top.offer(1, 1.0);
+
+        assertArrayEquals(new long[]{1, 3}, top.toArray());
+    }
+
+    @Test
+    public void testZeroLimitKeepsNothing() {
+        TopIds top = new TopIds(0);
+        top.offer(1, 1.0);
+
+        assertArrayEquals(new long[0], top.toArray());
+    }
+}